@@ -0,0 +1,194 @@
+/**
+ *
+ */
+package org.vsg.common.i18n.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.vsg.common.i18n.ClasspathI18nMessageProvider;
+import org.vsg.common.i18n.MessageBundleCompiler;
+
+/**
+ * Compiles the resource bundles below the resources directory into
+ * {@code CompiledMessageBundle} classes, to be served at runtime by a
+ * {@code CompiledBundleMessageSource} configured with the same class name.
+ * <p>Bundle files are read exactly like {@link ClasspathI18nMessageProvider}
+ * reads them; fallbacks, including the one to the system Locale, are
+ * resolved by the {@code CompiledBundleMessageSource} at runtime.
+ * @author vison ruan
+ *
+ */
+@Mojo(name = "compile-bundles", defaultPhase = LifecyclePhase.GENERATE_SOURCES, threadSafe = true)
+public class CompileBundlesMojo extends AbstractMojo {
+
+	private static final String PROPERTIES_SUFFIX = ".properties";
+
+	/** "basename_language[_COUNTRY[_variant]]" */
+	private static final Pattern LOCALE_SUFFIX =
+			Pattern.compile("(.+?)_([a-z]{2,3})(?:_([A-Z]{2}|[0-9]{3})(?:_(\\w+))?)?");
+
+	/** Locales a filename suffix has to name to be taken as Locale suffix */
+	private static final Set<Locale> AVAILABLE_LOCALES = new HashSet<Locale>(Arrays.asList(Locale.getAvailableLocales()));
+
+	@Parameter(defaultValue = "${project}", readonly = true, required = true)
+	private MavenProject project;
+
+	/**
+	 * The directory to read the bundle files from.
+	 */
+	@Parameter(defaultValue = "${project.basedir}/src/main/resources", required = true)
+	private File resourcesDirectory;
+
+	/**
+	 * The basenames to compile, e.g. "i18n/message". Default is every
+	 * bundle found in the resources directory, taking a filename suffix
+	 * as Locale suffix only if it names a Locale available in the JDK:
+	 * configure the basenames if a bundle is named like e.g. "error_it".
+	 */
+	@Parameter
+	private String[] basenames;
+
+	/**
+	 * The fully qualified name of the default bundle class.
+	 */
+	@Parameter(required = true)
+	private String className;
+
+	/**
+	 * The source root to generate the bundle classes into.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/generated-sources/i18n", required = true)
+	private File outputDirectory;
+
+
+	@Override
+	public void execute() throws MojoExecutionException {
+		if (!this.resourcesDirectory.isDirectory()) {
+			getLog().info("No resources directory [" + this.resourcesDirectory + "], skipping");
+			return;
+		}
+		Set<String> foundBasenames = new TreeSet<String>();
+		Set<String> localeTags = new TreeSet<String>();
+		scan(this.resourcesDirectory, "", foundBasenames, localeTags);
+
+		List<Locale> locales = new ArrayList<Locale>(localeTags.size());
+		for (String localeTag : localeTags) {
+			locales.add(Locale.forLanguageTag(localeTag));
+		}
+		String[] bundleBasenames = (this.basenames != null ?
+				this.basenames : foundBasenames.toArray(new String[foundBasenames.size()]));
+
+		ClasspathI18nMessageProvider source = new ClasspathI18nMessageProvider();
+		source.setBundleClassLoader(createResourcesClassLoader());
+		source.setBasenames(bundleBasenames);
+		try {
+			List<File> files = new MessageBundleCompiler(source).compile(this.className, locales, this.outputDirectory);
+			getLog().info("Compiled " + bundleBasenames.length + " bundle(s) into " + files.size() + " class(es)");
+		}
+		catch (IOException ex) {
+			throw new MojoExecutionException("Could not generate bundle classes in [" + this.outputDirectory + "]", ex);
+		}
+		this.project.addCompileSourceRoot(this.outputDirectory.getPath());
+	}
+
+	/**
+	 * Collect the basenames and Locales of all bundle files below the given directory.
+	 */
+	private void scan(File directory, String path, Set<String> foundBasenames, Set<String> localeTags) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (file.isDirectory()) {
+				scan(file, path + name + "/", foundBasenames, localeTags);
+			}
+			else if (name.endsWith(PROPERTIES_SUFFIX)) {
+				String filename = path + name.substring(0, name.length() - PROPERTIES_SUFFIX.length());
+				String basename = resolveBasename(filename, this.basenames);
+				if (basename == null) {
+					continue;
+				}
+				foundBasenames.add(basename);
+				if (filename.length() > basename.length()) {
+					Locale locale = parseLocale(filename.substring(basename.length() + 1));
+					if (locale != null) {
+						localeTags.add(locale.toLanguageTag());
+					}
+					else if (getLog().isDebugEnabled()) {
+						getLog().debug("Ignoring bundle file [" + filename + "] without Locale suffix");
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the basename of the given bundle filename: the longest of the
+	 * given basenames it belongs to, or without basenames the filename
+	 * stripped of a suffix naming an available Locale.
+	 * @param filename the filename without extension, e.g. "i18n/message_en_US"
+	 * @param basenames the configured basenames, or {@code null} if none
+	 * @return the basename, or {@code null} if the file belongs to none
+	 * of the given basenames
+	 */
+	static String resolveBasename(String filename, String[] basenames) {
+		if (basenames != null) {
+			String basename = null;
+			for (String candidate : basenames) {
+				if ((filename.equals(candidate) || filename.startsWith(candidate + "_")) &&
+						(basename == null || candidate.length() > basename.length())) {
+					basename = candidate;
+				}
+			}
+			return basename;
+		}
+		Matcher matcher = LOCALE_SUFFIX.matcher(filename);
+		if (matcher.matches() && parseLocale(filename.substring(matcher.group(1).length() + 1)) != null) {
+			return matcher.group(1);
+		}
+		return filename;
+	}
+
+	/**
+	 * Parse the given "language[_COUNTRY[_variant]]" filename suffix.
+	 * @return the Locale, or {@code null} if the suffix doesn't name
+	 * a Locale available in the JDK
+	 */
+	static Locale parseLocale(String suffix) {
+		String[] parts = suffix.split("_", 3);
+		Locale locale = new Locale(parts[0],
+				(parts.length > 1 ? parts[1] : ""),
+				(parts.length > 2 ? parts[2] : ""));
+		return (AVAILABLE_LOCALES.contains(locale) ? locale : null);
+	}
+
+	private ClassLoader createResourcesClassLoader() throws MojoExecutionException {
+		try {
+			return new URLClassLoader(new URL[] {this.resourcesDirectory.toURI().toURL()}, null);
+		}
+		catch (MalformedURLException ex) {
+			throw new MojoExecutionException("Invalid resources directory [" + this.resourcesDirectory + "]", ex);
+		}
+	}
+}
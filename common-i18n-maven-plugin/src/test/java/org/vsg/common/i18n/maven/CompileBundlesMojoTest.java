@@ -0,0 +1,44 @@
+package org.vsg.common.i18n.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class CompileBundlesMojoTest {
+
+	@Test
+	public void testResolveBasename() throws Exception {
+		assertEquals("i18n/message", CompileBundlesMojo.resolveBasename("i18n/message", null));
+		assertEquals("i18n/message", CompileBundlesMojo.resolveBasename("i18n/message_en", null));
+		assertEquals("i18n/message", CompileBundlesMojo.resolveBasename("i18n/message_zh_CN", null));
+		assertEquals("i18n/my_app", CompileBundlesMojo.resolveBasename("i18n/my_app_de", null));
+
+		// suffixes that aren't Locales belong to the basename
+		assertEquals("i18n/error_msg", CompileBundlesMojo.resolveBasename("i18n/error_msg", null));
+		assertEquals("i18n/my_app", CompileBundlesMojo.resolveBasename("i18n/my_app", null));
+		assertEquals("i18n/message_xx_YY", CompileBundlesMojo.resolveBasename("i18n/message_xx_YY", null));
+	}
+
+	@Test
+	public void testResolveConfiguredBasename() throws Exception {
+		String[] basenames = new String[] {"i18n/error", "i18n/error_it", "i18n/message"};
+		assertEquals("i18n/error_it", CompileBundlesMojo.resolveBasename("i18n/error_it", basenames));
+		assertEquals("i18n/error_it", CompileBundlesMojo.resolveBasename("i18n/error_it_de", basenames));
+		assertEquals("i18n/error", CompileBundlesMojo.resolveBasename("i18n/error_fr", basenames));
+		assertEquals("i18n/message", CompileBundlesMojo.resolveBasename("i18n/message_zh_CN", basenames));
+		assertNull(CompileBundlesMojo.resolveBasename("i18n/other_en", basenames));
+		assertNull(CompileBundlesMojo.resolveBasename("i18n/messages", basenames));
+	}
+
+	@Test
+	public void testParseLocale() throws Exception {
+		assertEquals(Locale.ENGLISH, CompileBundlesMojo.parseLocale("en"));
+		assertEquals(Locale.CHINA, CompileBundlesMojo.parseLocale("zh_CN"));
+		assertNull(CompileBundlesMojo.parseLocale("msg"));
+		assertNull(CompileBundlesMojo.parseLocale("backup"));
+		assertNull(CompileBundlesMojo.parseLocale("xx_YY"));
+	}
+}
@@ -0,0 +1,30 @@
+package org.vsg.common.i18n;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the selected benchmarks at 1, 4 and N threads, N being the
+ * number of available processors.
+ * <p>Usage: {@code mvn -Pjmh test-compile exec:exec [-Djmh.includes=regex]}
+ * @author vison ruan
+ *
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws RunnerException {
+		String includes = (args.length > 0 ? args[0] : ".*");
+		int processors = Runtime.getRuntime().availableProcessors();
+		int[] threadCounts = (processors > 4 ? new int[] {1, 4, processors} : new int[] {1, 4});
+		for (int threads : threadCounts) {
+			Options options = new OptionsBuilder()
+					.include(includes)
+					.exclude(BenchmarkMain.class.getSimpleName())
+					.threads(threads)
+					.build();
+			new Runner(options).run();
+		}
+	}
+}
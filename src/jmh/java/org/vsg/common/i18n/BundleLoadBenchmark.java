@@ -0,0 +1,88 @@
+package org.vsg.common.i18n;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold loading of generated bundles: every invocation creates a fresh
+ * provider and resolves one message, which loads and merges the bundle
+ * files of the Locale's fallback chain.
+ * @author vison ruan
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BundleLoadBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	public int keys;
+
+	private File directory;
+
+	private ClassLoader bundleClassLoader;
+
+	@Setup
+	public void setUp() throws IOException {
+		this.directory = File.createTempFile("i18n-bench", "");
+		this.directory.delete();
+		new File(this.directory, "bench").mkdirs();
+		writeBundle("bench/messages", "Message");
+		writeBundle("bench/messages_zh", "\u6D88\u606F");
+		writeBundle("bench/messages_zh_CN", "\u6D88\u606F CN");
+		this.bundleClassLoader = new URLClassLoader(new URL[] {this.directory.toURI().toURL()}, null);
+	}
+
+	private void writeBundle(String filename, String value) throws IOException {
+		Writer writer = new OutputStreamWriter(
+				new FileOutputStream(new File(this.directory, filename + ".properties")), "UTF-8");
+		try {
+			for (int i = 0; i < this.keys; i++) {
+				writer.write("bench.module" + (i % 97) + ".label" + i + "=" + value + " {0} #" + i + "\n");
+			}
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (String filename : new String[] {"messages", "messages_zh", "messages_zh_CN"}) {
+			new File(this.directory, "bench/" + filename + ".properties").delete();
+		}
+		new File(this.directory, "bench").delete();
+		this.directory.delete();
+	}
+
+	@Benchmark
+	public String coldLoad() {
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+		provider.setBundleClassLoader(this.bundleClassLoader);
+		provider.setBasenames(new String[] {"bench/messages"});
+		return provider.getMessage("bench.module0.label0", null, Locale.CHINA);
+	}
+}
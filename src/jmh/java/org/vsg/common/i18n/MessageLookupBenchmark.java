@@ -0,0 +1,80 @@
+package org.vsg.common.i18n;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of message lookup and formatting against one shared,
+ * warmed-up provider, so that contention between threads shows up.
+ * @author vison ruan
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageLookupBenchmark {
+
+	private static final Object[] ARGS = {"Vison", 3};
+
+	private ClasspathI18nMessageProvider provider;
+
+	private MessageSourceResolvable resolvable;
+
+	@Setup
+	public void setUp() {
+		this.provider = new ClasspathI18nMessageProvider();
+		this.provider.setBasenames(new String[] {"i18n/message", "i18n/error"});
+		this.resolvable = new DefaultMessageSourceResolvable(
+				new String[] {"typeMismatch.user.age", "typeMismatch.age", "typeMismatch.int", "label.firstname"});
+		this.provider.getMessage("label.firstname", null, Locale.CHINA);
+	}
+
+	@Benchmark
+	public String getMessageHit() {
+		return this.provider.getMessage("label.firstname", null, Locale.CHINA);
+	}
+
+	@Benchmark
+	public String getMessageWithArgs() {
+		return this.provider.getMessage("label.welcome", ARGS, Locale.CHINA);
+	}
+
+	@Benchmark
+	public String getMessageWithPrimitiveArgs() {
+		return this.provider.getMessage("label.welcome", Locale.CHINA, "Vison", 3);
+	}
+
+	@Benchmark
+	public String getMessageMiss() {
+		return this.provider.getMessage("label.missing", null, "Missing", Locale.CHINA);
+	}
+
+	@Benchmark
+	public String getMessageMissWithArgs() {
+		return this.provider.getMessage("label.missing", ARGS, "Missing {0}", Locale.CHINA);
+	}
+
+	@Benchmark
+	public String getMessageResolvable() {
+		return this.provider.getMessage(this.resolvable, Locale.CHINA);
+	}
+
+	@Benchmark
+	public String formatDefaultMessage() {
+		return this.provider.formatMessage("Hello {0}, {1,number,integer} left", ARGS, Locale.CHINA);
+	}
+}
@@ -3,27 +3,49 @@
  */
 package org.vsg.common.i18n;
 
+import java.io.IOException;
 import java.text.MessageFormat;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author vison ruan
  *
  */
 public abstract class AbstractMessageSource extends MessageSourceSupport implements HierarchicalMessageSource  {
+	private static final Object[] NO_ARGS = new Object[0];
+
+	/** Maximum number of cached resolution plans */
+	private static final int MAX_RESOLUTION_PLANS = 10000;
+
 	private MessageSource parentMessageSource;
 
 	private Properties commonMessages;
 
 	private boolean useCodeAsDefaultMessage = false;
 
+	/** Incremented whenever codes might resolve differently than before */
+	private final AtomicLong resolutionVersion = new AtomicLong();
+
+	/** Winning code position per codes array and Locale */
+	private final BoundedCache<ResolutionKey, ResolutionPlan> resolutionPlans =
+			new BoundedCache<ResolutionKey, ResolutionPlan>(MAX_RESOLUTION_PLANS);
+
 
 	@Override
 	public void setParentMessageSource(MessageSource parent) {
+		long parentStamp = getParentResolutionStamp();
 		this.parentMessageSource = parent;
+		// keep the stamp of the whole chain increasing, whatever the new parent's stamp
+		this.resolutionVersion.addAndGet(1 + Math.max(0, parentStamp));
 	}
 
 	@Override
@@ -39,6 +61,7 @@ public abstract class AbstractMessageSource extends MessageSourceSupport impleme
 	 */
 	public void setCommonMessages(Properties commonMessages) {
 		this.commonMessages = commonMessages;
+		invalidateResolutionPlans();
 	}
 
 	/**
@@ -110,6 +133,107 @@ public abstract class AbstractMessageSource extends MessageSourceSupport impleme
 		throw new NoSuchMessageException(code, locale);
 	}
 
+	/**
+	 * Resolve the message with the given arguments, like
+	 * {@link #getMessage(String, Object[], Locale)} does.
+	 * <p>There are no String-only fixed-arity overloads, as they would make
+	 * calls like {@code getMessage(code, null, "default")} ambiguous.
+	 * @param code the code to lookup up
+	 * @param locale the Locale in which to do the lookup
+	 * @param args the arguments that will be filled in for params within the message
+	 * @return the resolved message
+	 * @throws NoSuchMessageException if the message wasn't found
+	 */
+	public final String getMessage(String code, Locale locale, Object... args) throws NoSuchMessageException {
+		return getMessage(code, args, locale);
+	}
+
+	/**
+	 * Resolve the message with a single numeric argument.
+	 * <p>A message found as {@link CompiledMessageFormat} in this source is
+	 * rendered from the primitive, without an argument array or boxing;
+	 * anything else goes through {@link #getMessage(String, Object[], Locale)}.
+	 * @see #resolveCompiledCode
+	 */
+	public final String getMessage(String code, Locale locale, long arg0) throws NoSuchMessageException {
+		CompiledMessageFormat messageFormat = resolveCompiledCode(code, locale);
+		if (messageFormat == null) {
+			return getMessage(code, new Object[] {arg0}, locale);
+		}
+		MessageSourceMetrics metrics = getMetrics();
+		long start = (metrics != null ? System.nanoTime() : 0);
+		String msg = messageFormat.render(arg0);
+		recordCompiledLookup(metrics, start);
+		return msg;
+	}
+
+	/**
+	 * Resolve the message with a String and a numeric argument, rendering
+	 * it without an argument array where possible.
+	 * @see #getMessage(String, Locale, long)
+	 */
+	public final String getMessage(String code, Locale locale, String arg0, long arg1) throws NoSuchMessageException {
+		CompiledMessageFormat messageFormat = resolveCompiledCode(code, locale);
+		if (messageFormat == null) {
+			return getMessage(code, new Object[] {arg0, arg1}, locale);
+		}
+		MessageSourceMetrics metrics = getMetrics();
+		long start = (metrics != null ? System.nanoTime() : 0);
+		String msg = messageFormat.render(arg0, arg1);
+		recordCompiledLookup(metrics, start);
+		return msg;
+	}
+
+	/**
+	 * Resolve the message with two numeric arguments, rendering it without
+	 * an argument array where possible.
+	 * @see #getMessage(String, Locale, long)
+	 */
+	public final String getMessage(String code, Locale locale, long arg0, long arg1) throws NoSuchMessageException {
+		CompiledMessageFormat messageFormat = resolveCompiledCode(code, locale);
+		if (messageFormat == null) {
+			return getMessage(code, new Object[] {arg0, arg1}, locale);
+		}
+		MessageSourceMetrics metrics = getMetrics();
+		long start = (metrics != null ? System.nanoTime() : 0);
+		String msg = messageFormat.render(arg0, arg1);
+		recordCompiledLookup(metrics, start);
+		return msg;
+	}
+
+	/**
+	 * Resolve the given code to a {@link CompiledMessageFormat} of this
+	 * source for the fixed-arity {@code getMessage} variants, which take
+	 * the regular path for anything else.
+	 * <p>The default implementation asks {@link #resolveCode}; codes only
+	 * found in the common messages or a parent return {@code null}.
+	 * @param code the code to lookup up
+	 * @param locale the Locale in which to do the lookup, or {@code null}
+	 * for the default Locale
+	 * @return the compiled format, or {@code null}
+	 */
+	protected CompiledMessageFormat resolveCompiledCode(String code, Locale locale) {
+		if (code == null) {
+			return null;
+		}
+		MessageFormat messageFormat = resolveCode(code, (locale != null ? locale : Locale.getDefault()));
+		return (messageFormat instanceof CompiledMessageFormat ? (CompiledMessageFormat) messageFormat : null);
+	}
+
+	private static void recordCompiledLookup(MessageSourceMetrics metrics, long start) {
+		if (metrics != null) {
+			metrics.recordFormat(System.nanoTime() - start);
+			metrics.recordLookup(true);
+		}
+	}
+
+	/**
+	 * Resolve the given resolvable, trying its codes in order.
+	 * <p>For a source with a {@link #getResolutionStamp() resolution stamp},
+	 * the position of the winning code is cached per codes array and Locale,
+	 * so that the same shape of resolvable, e.g. a validation error with
+	 * several codes that mostly miss, jumps straight to the right code.
+	 */
 	@Override
 	public final String getMessage(MessageSourceResolvable resolvable, Locale locale)
 			throws NoSuchMessageException {
@@ -118,15 +242,20 @@ public abstract class AbstractMessageSource extends MessageSourceSupport impleme
 		if (codes == null) {
 			codes = new String[0];
 		}
-		for (String code : codes) {
-			String msg = getMessageInternal(code, resolvable.getArguments(), locale);
-			if (msg != null) {
-				return msg;
-			}
+		Object[] args = resolvable.getArguments();
+		String msg = null;
+		if (codes.length > 1) {
+			msg = resolveCodes(codes, args, locale);
+		}
+		else if (codes.length == 1) {
+			msg = getMessageInternal(codes[0], args, locale);
+		}
+		if (msg != null) {
+			return msg;
 		}
 		String defaultMessage = resolvable.getDefaultMessage();
 		if (defaultMessage != null) {
-			return renderDefaultMessage(defaultMessage, resolvable.getArguments(), locale);
+			return renderDefaultMessage(defaultMessage, args, locale);
 		}
 		if (codes.length > 0) {
 			String fallback = getDefaultMessage(codes[0]);
@@ -137,6 +266,255 @@ public abstract class AbstractMessageSource extends MessageSourceSupport impleme
 		throw new NoSuchMessageException(codes.length > 0 ? codes[codes.length - 1] : null, locale);
 	}
 
+	/**
+	 * Resolve the first of the given codes found, following the cached
+	 * resolution plan if still valid and recording a new one otherwise.
+	 */
+	private String resolveCodes(String[] codes, Object[] args, Locale locale) {
+		long stamp = getResolutionStamp();
+		if (stamp < 0) {
+			return resolveFirstCode(codes, args, locale);
+		}
+		ResolutionKey key = new ResolutionKey(codes, (locale != null ? locale : Locale.getDefault()));
+		ResolutionPlan plan = this.resolutionPlans.get(key);
+		if (plan != null && plan.stamp == stamp) {
+			if (plan.index < 0) {
+				return null;
+			}
+			String msg = getMessageInternal(codes[plan.index], args, locale);
+			if (msg != null) {
+				return msg;
+			}
+		}
+		String msg = null;
+		int index = -1;
+		for (int i = 0; i < codes.length && msg == null; i++) {
+			msg = getMessageInternal(codes[i], args, locale);
+			if (msg != null) {
+				index = i;
+			}
+		}
+		if (stamp == getResolutionStamp()) {
+			// copy the codes, as the caller may reuse its array
+			this.resolutionPlans.putIfAbsent(new ResolutionKey(codes.clone(), key.locale),
+					new ResolutionPlan(index, stamp), 1);
+		}
+		return msg;
+	}
+
+	private String resolveFirstCode(String[] codes, Object[] args, Locale locale) {
+		for (int i = 0; i < codes.length; i++) {
+			String msg = getMessageInternal(codes[i], args, locale);
+			if (msg != null) {
+				return msg;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Return a stamp of everything that determines which codes this source
+	 * and its ancestors resolve, which only ever increases and changes
+	 * whenever a code might resolve differently than before; or -1 if
+	 * this can't be told, disabling cached resolution plans.
+	 * <p>The default implementation returns -1. Sources whose messages only
+	 * change in ways they track should return
+	 * {@link #getChainResolutionStamp(long)} for their own stamp.
+	 * @see #invalidateResolutionPlans()
+	 */
+	protected long getResolutionStamp() {
+		return -1;
+	}
+
+	/**
+	 * Combine the given stamp of this source's own messages with the stamp
+	 * of the common messages, the parent and its ancestors.
+	 * @param ownStamp a never decreasing stamp of this source's own messages
+	 * @return the stamp of the chain, or -1 if the parent can't tell its stamp
+	 */
+	protected final long getChainResolutionStamp(long ownStamp) {
+		long parentStamp = getParentResolutionStamp();
+		if (parentStamp < 0) {
+			return -1;
+		}
+		return ownStamp + this.resolutionVersion.get() + parentStamp;
+	}
+
+	private long getParentResolutionStamp() {
+		MessageSource parent = this.parentMessageSource;
+		if (parent == null) {
+			return 0;
+		}
+		if (parent instanceof AbstractMessageSource) {
+			return ((AbstractMessageSource) parent).getResolutionStamp();
+		}
+		return -1;
+	}
+
+	/**
+	 * Mark cached resolution plans as outdated, e.g. after messages were
+	 * reloaded in a way the resolution stamp doesn't track.
+	 */
+	protected void invalidateResolutionPlans() {
+		this.resolutionVersion.incrementAndGet();
+	}
+
+	/**
+	 * Resolve the message like {@link #getMessage(String, Object[], Locale)}
+	 * does, appending it to the given buffer instead of returning a new String.
+	 * <p>A message without arguments is appended as is; a message compiled
+	 * into a {@link CompiledMessageFormat} is formatted straight into the buffer.
+	 * @param code the code to lookup up
+	 * @param args array of arguments that will be filled in for params within
+	 * the message, or {@code null} if none
+	 * @param locale the Locale in which to do the lookup
+	 * @param out the buffer to append the message to
+	 * @throws NoSuchMessageException if the message wasn't found
+	 */
+	public final void renderMessage(String code, Object[] args, Locale locale, StringBuilder out)
+			throws NoSuchMessageException {
+		try {
+			renderMessage(code, args, locale, (Appendable) out);
+		}
+		catch (IOException ex) {
+			// never thrown by a StringBuilder
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Resolve the message like {@link #getMessage(String, Object[], Locale)}
+	 * does, appending it to the given output instead of returning a new String.
+	 * <p>A message without arguments is appended as is. Formatted messages
+	 * are rendered straight into a {@code StringBuilder}, and appended as
+	 * a String to any other output.
+	 * @param code the code to lookup up
+	 * @param args array of arguments that will be filled in for params within
+	 * the message, or {@code null} if none
+	 * @param locale the Locale in which to do the lookup
+	 * @param out the output to append the message to
+	 * @throws NoSuchMessageException if the message wasn't found
+	 * @throws IOException if appending to the output fails
+	 */
+	public final void renderMessage(String code, Object[] args, Locale locale, Appendable out)
+			throws NoSuchMessageException, IOException {
+		if (code != null && renderCode(code, args, (locale != null ? locale : Locale.getDefault()), out)) {
+			MessageSourceMetrics metrics = getMetrics();
+			if (metrics != null) {
+				metrics.recordLookup(true);
+			}
+			return;
+		}
+		// common messages, parent, or default message
+		out.append(getMessage(code, args, locale));
+	}
+
+	/**
+	 * Append the message for the given code from this source's own messages,
+	 * if found there.
+	 */
+	private boolean renderCode(String code, Object[] args, Locale locale, Appendable out) throws IOException {
+		if (!isAlwaysUseMessageFormat() && (args == null || args.length == 0)) {
+			String message = resolveCodeWithoutArguments(code, locale);
+			if (message == null) {
+				return false;
+			}
+			out.append(message);
+			return true;
+		}
+		long generation = getMessageGeneration();
+		MessageFormat messageFormat = resolveCode(code, locale);
+		if (messageFormat == null) {
+			return false;
+		}
+		if (out instanceof StringBuilder) {
+			applyMessageFormat(code, generation, messageFormat, args, locale, (StringBuilder) out);
+		}
+		else {
+			out.append(applyMessageFormat(code, generation, messageFormat, args, locale));
+		}
+		return true;
+	}
+
+	@Override
+	public Map<String, String> getMessages(Collection<String> codes, Locale locale) {
+		Locale localeToUse = (locale != null ? locale : Locale.getDefault());
+		Map<String, String> resolved = new HashMap<String, String>(codes.size() * 4 / 3 + 1);
+		if (!isAlwaysUseMessageFormat()) {
+			resolveCodesWithoutArguments(codes, localeToUse, resolved);
+		}
+		Map<String, String> messages = new LinkedHashMap<String, String>(codes.size() * 4 / 3 + 1);
+		for (String code : codes) {
+			if (code == null || messages.containsKey(code)) {
+				continue;
+			}
+			String msg = resolved.get(code);
+			if (msg == null) {
+				// common messages, parent, or message format
+				msg = getMessageInternal(code, null, localeToUse);
+			}
+			if (msg == null) {
+				msg = getDefaultMessage(code);
+			}
+			if (msg != null) {
+				messages.put(code, msg);
+			}
+		}
+		return messages;
+	}
+
+	@Override
+	public Map<MessageSourceResolvable, String> getResolvableMessages(
+			Collection<? extends MessageSourceResolvable> resolvables, Locale locale) {
+
+		Locale localeToUse = (locale != null ? locale : Locale.getDefault());
+		Map<String, String> resolved = new HashMap<String, String>();
+		if (!isAlwaysUseMessageFormat()) {
+			Set<String> codes = new LinkedHashSet<String>();
+			for (MessageSourceResolvable resolvable : resolvables) {
+				Object[] args = resolvable.getArguments();
+				if (resolvable.getCodes() != null && (args == null || args.length == 0)) {
+					for (String code : resolvable.getCodes()) {
+						if (code != null) {
+							codes.add(code);
+						}
+					}
+				}
+			}
+			resolveCodesWithoutArguments(codes, localeToUse, resolved);
+		}
+		Map<MessageSourceResolvable, String> messages =
+				new LinkedHashMap<MessageSourceResolvable, String>(resolvables.size() * 4 / 3 + 1);
+		for (MessageSourceResolvable resolvable : resolvables) {
+			String[] codes = resolvable.getCodes();
+			if (codes == null) {
+				codes = new String[0];
+			}
+			Object[] args = resolvable.getArguments();
+			boolean withoutArguments = (args == null || args.length == 0);
+			String msg = null;
+			for (String code : codes) {
+				msg = (withoutArguments ? resolved.get(code) : null);
+				if (msg == null) {
+					msg = getMessageInternal(code, args, localeToUse);
+				}
+				if (msg != null) {
+					break;
+				}
+			}
+			if (msg == null && resolvable.getDefaultMessage() != null) {
+				msg = renderDefaultMessage(resolvable.getDefaultMessage(), args, localeToUse);
+			}
+			if (msg == null && codes.length > 0) {
+				msg = getDefaultMessage(codes[0]);
+			}
+			if (msg != null) {
+				messages.put(resolvable, msg);
+			}
+		}
+		return messages;
+	}
+
 
 	/**
 	 * Resolve the given code and arguments as message in the given Locale,
@@ -153,6 +531,15 @@ public abstract class AbstractMessageSource extends MessageSourceSupport impleme
 	 * @see #setUseCodeAsDefaultMessage
 	 */
 	protected String getMessageInternal(String code, Object[] args, Locale locale) {
+		String msg = resolveMessage(code, args, locale);
+		MessageSourceMetrics metrics = getMetrics();
+		if (metrics != null) {
+			metrics.recordLookup(msg != null);
+		}
+		return msg;
+	}
+
+	private String resolveMessage(String code, Object[] args, Locale locale) {
 		if (code == null) {
 			return null;
 		}
@@ -173,17 +560,16 @@ public abstract class AbstractMessageSource extends MessageSourceSupport impleme
 		}
 
 		else {
-			// Resolve arguments eagerly, for the case where the message
-			// is defined in a parent MessageSource but resolvable arguments
-			// are defined in the child MessageSource.
-			argsToUse = resolveArguments(args, locale);
-
+			long generation = getMessageGeneration();
 			MessageFormat messageFormat = resolveCode(code, locale);
 			if (messageFormat != null) {
-				synchronized (messageFormat) {
-					return messageFormat.format(argsToUse);
-				}
+				return applyMessageFormat(code, generation, messageFormat, args, locale);
 			}
+
+			// Resolve arguments here, for the case where the message
+			// is defined in a parent MessageSource but resolvable arguments
+			// are defined in the child MessageSource.
+			argsToUse = resolveArguments(args, locale);
 		}
 
 		// Check locale-independent common messages for the given message code.
@@ -211,20 +597,26 @@ public abstract class AbstractMessageSource extends MessageSourceSupport impleme
 	protected String getMessageFromParent(String code, Object[] args, Locale locale) {
 		MessageSource parent = getParentMessageSource();
 		if (parent != null) {
-			if (parent instanceof AbstractMessageSource) {
-				// Call internal method to avoid getting the default code back
-				// in case of "useCodeAsDefaultMessage" being activated.
-				return ((AbstractMessageSource) parent).getMessageInternal(code, args, locale);
-			}
-			else {
-				// Check parent MessageSource, returning null if not found there.
-				return parent.getMessage(code, args, null, locale);
-			}
+			return getMessageFrom(parent, code, args, locale);
 		}
 		// Not found in parent either.
 		return null;
 	}
 
+	/**
+	 * Try to retrieve the given message from the given ancestor MessageSource.
+	 * @return the resolved message, or {@code null} if not found
+	 */
+	static String getMessageFrom(MessageSource source, String code, Object[] args, Locale locale) {
+		if (source instanceof AbstractMessageSource) {
+			// Call internal method to avoid getting the default code back
+			// in case of "useCodeAsDefaultMessage" being activated.
+			return ((AbstractMessageSource) source).getMessageInternal(code, args, locale);
+		}
+		// Check parent MessageSource, returning null if not found there.
+		return source.getMessage(code, args, null, locale);
+	}
+
 	/**
 	 * Return a fallback default message for the given code, if any.
 	 * <p>Default is to return the code itself if "useCodeAsDefaultMessage" is activated,
@@ -247,6 +639,7 @@ public abstract class AbstractMessageSource extends MessageSourceSupport impleme
 	 * Searches through the given array of objects, finds any MessageSourceResolvable
 	 * objects and resolves them.
 	 * <p>Allows for messages to have MessageSourceResolvables as arguments.
+	 * Returns the given array itself if there is nothing to resolve.
 	 * @param args array of arguments for a message
 	 * @param locale the locale to resolve through
 	 * @return an array of arguments with any MessageSourceResolvables resolved
@@ -254,18 +647,19 @@ public abstract class AbstractMessageSource extends MessageSourceSupport impleme
 	@Override
 	protected Object[] resolveArguments(Object[] args, Locale locale) {
 		if (args == null) {
-			return new Object[0];
+			return NO_ARGS;
 		}
-		List<Object> resolvedArgs = new ArrayList<Object>(args.length);
-		for (Object arg : args) {
-			if (arg instanceof MessageSourceResolvable) {
-				resolvedArgs.add(getMessage((MessageSourceResolvable) arg, locale));
-			}
-			else {
-				resolvedArgs.add(arg);
+		Object[] resolvedArgs = args;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i] instanceof MessageSourceResolvable) {
+				if (resolvedArgs == args) {
+					// copy on first resolvable, leaving the caller's array untouched
+					resolvedArgs = args.clone();
+				}
+				resolvedArgs[i] = getMessage((MessageSourceResolvable) args[i], locale);
 			}
 		}
-		return resolvedArgs.toArray(new Object[resolvedArgs.size()]);
+		return resolvedArgs;
 	}
 
 	/**
@@ -288,13 +682,33 @@ public abstract class AbstractMessageSource extends MessageSourceSupport impleme
 	protected String resolveCodeWithoutArguments(String code, Locale locale) {
 		MessageFormat messageFormat = resolveCode(code, locale);
 		if (messageFormat != null) {
-			synchronized (messageFormat) {
-				return messageFormat.format(new Object[0]);
-			}
+			return applyMessageFormat(messageFormat, NO_ARGS);
 		}
 		return null;
 	}
 
+	/**
+	 * Resolve the given codes without arguments in one go, putting the
+	 * messages found into the given map. Used by the batch methods, which
+	 * fall back to {@link #getMessageInternal} for codes left unresolved.
+	 * <p>The default implementation calls {@link #resolveCodeWithoutArguments}
+	 * for each code. Subclasses are encouraged to look up the state for the
+	 * Locale only once for the whole batch.
+	 * @param codes the codes of the messages to resolve
+	 * @param locale the Locale to resolve the codes for
+	 * @param messages the map to put the messages found into, by code
+	 */
+	protected void resolveCodesWithoutArguments(Collection<String> codes, Locale locale, Map<String, String> messages) {
+		for (String code : codes) {
+			if (code != null) {
+				String message = resolveCodeWithoutArguments(code, locale);
+				if (message != null) {
+					messages.put(code, message);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Subclasses must implement this method to resolve a message.
 	 * <p>Returns a MessageFormat instance rather than a message String,
@@ -309,4 +723,56 @@ public abstract class AbstractMessageSource extends MessageSourceSupport impleme
 	 * @see #resolveCodeWithoutArguments(String, java.util.Locale)
 	 */
 	protected abstract MessageFormat resolveCode(String code, Locale locale);
+
+
+	/**
+	 * Key of a resolution plan: the codes of a resolvable and the Locale.
+	 */
+	private static final class ResolutionKey {
+
+		private final String[] codes;
+
+		private final Locale locale;
+
+		private final int hash;
+
+		ResolutionKey(String[] codes, Locale locale) {
+			this.codes = codes;
+			this.locale = locale;
+			this.hash = Arrays.hashCode(codes) * 31 + locale.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof ResolutionKey)) {
+				return false;
+			}
+			ResolutionKey otherKey = (ResolutionKey) other;
+			return (this.locale.equals(otherKey.locale) && Arrays.equals(this.codes, otherKey.codes));
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+
+
+	/**
+	 * Position of the winning code, or -1 if none, for the stamp it was found with.
+	 */
+	private static final class ResolutionPlan {
+
+		final int index;
+
+		final long stamp;
+
+		ResolutionPlan(int index, long stamp) {
+			this.index = index;
+			this.stamp = stamp;
+		}
+	}
 }
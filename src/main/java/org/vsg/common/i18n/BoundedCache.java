@@ -0,0 +1,409 @@
+/**
+ *
+ */
+package org.vsg.common.i18n;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded, concurrent cache with W-TinyLFU style eviction, used for
+ * compiled MessageFormats and rendered messages.
+ * <p>Hits are a lock-free {@code ConcurrentHashMap} read; accesses are
+ * recorded in a lossy ring buffer, and replayed under a lock by the thread
+ * that fills it or by the next insertion. New entries enter a small LRU
+ * window; entries leaving the window compete for the main space, a
+ * segmented LRU, against its least recently used entry, and the one used
+ * less often according to a count-min sketch is evicted. Hot entries thus
+ * stay cached while one-off entries don't displace them.
+ * <p>The weight of an entry is given on insertion, e.g. the length of its
+ * message text. Keys must implement {@code equals} and {@code hashCode}.
+ * @author vison ruan
+ *
+ */
+class BoundedCache<K, V> {
+
+	private static final int UNLINKED = -1;
+
+	private static final int WINDOW = 0;
+
+	private static final int PROBATION = 1;
+
+	private static final int PROTECTED = 2;
+
+	private static final int READ_BUFFER_SIZE = 128;
+
+	private static final int DRAIN_THRESHOLD = 32;
+
+	private final long maximumWeight;
+
+	private final long maximumWindowWeight;
+
+	private final long maximumProtectedWeight;
+
+	private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<K, Node<K, V>>();
+
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	// LRU queues in insertion order, guarded by the eviction lock
+	private final LinkedHashMap<K, Node<K, V>> window = new LinkedHashMap<K, Node<K, V>>();
+
+	private final LinkedHashMap<K, Node<K, V>> probation = new LinkedHashMap<K, Node<K, V>>();
+
+	private final LinkedHashMap<K, Node<K, V>> protectedQueue = new LinkedHashMap<K, Node<K, V>>();
+
+	private long windowWeight;
+
+	private long protectedWeight;
+
+	private volatile long totalWeight;
+
+	private final FrequencySketch sketch;
+
+	private final AtomicReferenceArray<Node<K, V>> readBuffer = new AtomicReferenceArray<Node<K, V>>(READ_BUFFER_SIZE);
+
+	private final AtomicLong readCounter = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+
+	/**
+	 * Create a cache holding entries up to the given total weight.
+	 */
+	BoundedCache(long maximumWeight) {
+		this.maximumWeight = Math.max(1, maximumWeight);
+		this.maximumWindowWeight = Math.max(1, this.maximumWeight / 100);
+		this.maximumProtectedWeight = (this.maximumWeight - this.maximumWindowWeight) * 8 / 10;
+		this.sketch = new FrequencySketch(this.maximumWeight);
+	}
+
+	/**
+	 * Return the cached value, or {@code null} if none.
+	 */
+	V get(K key) {
+		Node<K, V> node = this.data.get(key);
+		if (node == null) {
+			this.misses.increment();
+			return null;
+		}
+		this.hits.increment();
+		recordAccess(node);
+		return node.value;
+	}
+
+	/**
+	 * Cache the given value unless another thread cached one for the
+	 * same key meanwhile, evicting entries as needed.
+	 * @return the cached value
+	 */
+	V putIfAbsent(K key, V value, int weight) {
+		Node<K, V> node = new Node<K, V>(key, value, Math.max(1, weight));
+		Node<K, V> existing = this.data.putIfAbsent(node.key, node);
+		if (existing != null) {
+			return existing.value;
+		}
+		this.evictionLock.lock();
+		try {
+			drainReadBuffer();
+			if (this.data.get(node.key) == node) {
+				this.sketch.ensureCapacity(this.data.size());
+				this.sketch.increment(node.key.hashCode());
+				node.queue = WINDOW;
+				this.window.put(node.key, node);
+				this.windowWeight += node.weight;
+				this.totalWeight += node.weight;
+				evict();
+			}
+		}
+		finally {
+			this.evictionLock.unlock();
+		}
+		return value;
+	}
+
+	/**
+	 * Remove all entries.
+	 */
+	void clear() {
+		this.evictionLock.lock();
+		try {
+			for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+				this.readBuffer.set(i, null);
+			}
+			this.data.clear();
+			this.window.clear();
+			this.probation.clear();
+			this.protectedQueue.clear();
+			this.windowWeight = 0;
+			this.protectedWeight = 0;
+			this.totalWeight = 0;
+		}
+		finally {
+			this.evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Return the current statistics.
+	 */
+	CacheStats getStats() {
+		return new CacheStats(this.hits.sum(), this.misses.sum(), this.evictions.sum(),
+				this.data.size(), this.totalWeight, this.maximumWeight);
+	}
+
+
+	private void recordAccess(Node<K, V> node) {
+		long index = this.readCounter.getAndIncrement();
+		this.readBuffer.lazySet((int) (index & (READ_BUFFER_SIZE - 1)), node);
+		if ((index & (DRAIN_THRESHOLD - 1)) == DRAIN_THRESHOLD - 1 && this.evictionLock.tryLock()) {
+			try {
+				drainReadBuffer();
+			}
+			finally {
+				this.evictionLock.unlock();
+			}
+		}
+	}
+
+	private void drainReadBuffer() {
+		for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+			Node<K, V> node = this.readBuffer.getAndSet(i, null);
+			if (node != null) {
+				onAccess(node);
+			}
+		}
+	}
+
+	private void onAccess(Node<K, V> node) {
+		this.sketch.increment(node.key.hashCode());
+		if (node.queue == UNLINKED || this.data.get(node.key) != node) {
+			// not yet linked by its inserting thread, or evicted
+			return;
+		}
+		if (node.queue == WINDOW) {
+			moveToEnd(this.window, node);
+		}
+		else if (node.queue == PROBATION) {
+			this.probation.remove(node.key);
+			node.queue = PROTECTED;
+			this.protectedQueue.put(node.key, node);
+			this.protectedWeight += node.weight;
+			while (this.protectedWeight > this.maximumProtectedWeight && this.protectedQueue.size() > 1) {
+				Node<K, V> demoted = removeFirst(this.protectedQueue);
+				this.protectedWeight -= demoted.weight;
+				demoted.queue = PROBATION;
+				this.probation.put(demoted.key, demoted);
+			}
+		}
+		else {
+			moveToEnd(this.protectedQueue, node);
+		}
+	}
+
+	private void evict() {
+		while (this.windowWeight > this.maximumWindowWeight && this.window.size() > 0) {
+			Node<K, V> candidate = removeFirst(this.window);
+			this.windowWeight -= candidate.weight;
+			candidate.queue = PROBATION;
+			this.probation.put(candidate.key, candidate);
+			admit(candidate);
+		}
+		while (this.totalWeight > this.maximumWeight) {
+			Node<K, V> victim = firstNode();
+			if (victim == null) {
+				break;
+			}
+			remove(victim);
+		}
+	}
+
+	/**
+	 * Let the candidate just moved into the main space compete against the
+	 * least recently used main entry until the cache fits again.
+	 */
+	private void admit(Node<K, V> candidate) {
+		while (this.totalWeight > this.maximumWeight) {
+			Node<K, V> victim = null;
+			for (Node<K, V> node : this.probation.values()) {
+				if (node != candidate) {
+					victim = node;
+					break;
+				}
+			}
+			if (victim == null && !this.protectedQueue.isEmpty()) {
+				victim = this.protectedQueue.values().iterator().next();
+			}
+			if (victim == null ||
+					this.sketch.frequency(candidate.key.hashCode()) <= this.sketch.frequency(victim.key.hashCode())) {
+				remove(candidate);
+				return;
+			}
+			remove(victim);
+		}
+	}
+
+	private Node<K, V> firstNode() {
+		if (!this.probation.isEmpty()) {
+			return this.probation.values().iterator().next();
+		}
+		if (!this.protectedQueue.isEmpty()) {
+			return this.protectedQueue.values().iterator().next();
+		}
+		if (!this.window.isEmpty()) {
+			return this.window.values().iterator().next();
+		}
+		return null;
+	}
+
+	private void remove(Node<K, V> node) {
+		if (node.queue == UNLINKED) {
+			return;
+		}
+		if (node.queue == WINDOW) {
+			this.window.remove(node.key);
+			this.windowWeight -= node.weight;
+		}
+		else if (node.queue == PROBATION) {
+			this.probation.remove(node.key);
+		}
+		else {
+			this.protectedQueue.remove(node.key);
+			this.protectedWeight -= node.weight;
+		}
+		node.queue = UNLINKED;
+		this.totalWeight -= node.weight;
+		this.data.remove(node.key, node);
+		this.evictions.increment();
+	}
+
+	private static <K, V> void moveToEnd(LinkedHashMap<K, Node<K, V>> queue, Node<K, V> node) {
+		queue.remove(node.key);
+		queue.put(node.key, node);
+	}
+
+	private static <K, V> Node<K, V> removeFirst(LinkedHashMap<K, Node<K, V>> queue) {
+		Iterator<Node<K, V>> it = queue.values().iterator();
+		Node<K, V> node = it.next();
+		it.remove();
+		return node;
+	}
+
+
+	private static final class Node<K, V> {
+
+		final K key;
+
+		final V value;
+
+		final int weight;
+
+		/** Queue the node is in, guarded by the eviction lock */
+		int queue = UNLINKED;
+
+		Node(K key, V value, int weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+
+	/**
+	 * Count-min sketch of 4-bit counters, four per entry, halved
+	 * periodically so that old popularity fades. Starts small and grows
+	 * with the number of entries, up to the size for a full cache, so that
+	 * a generously bounded but sparsely used cache stays cheap.
+	 * Guarded by the eviction lock.
+	 */
+	private static final class FrequencySketch {
+
+		private static final long[] SEEDS = {
+			0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+		};
+
+		private static final int MINIMUM_LENGTH = 256;
+
+		private final int maximumLength;
+
+		private int length;
+
+		private long[] table;
+
+		private int sampleSize;
+
+		private int additions;
+
+		FrequencySketch(long maximumWeight) {
+			this.maximumLength = tableLength((int) Math.min(1 << 22, Math.max(MINIMUM_LENGTH, maximumWeight / 8)));
+			resize(MINIMUM_LENGTH);
+		}
+
+		/**
+		 * Grow the sketch to a counter per row for each of the given number
+		 * of entries, if still below its maximum size. Counts are reset.
+		 */
+		void ensureCapacity(int entries) {
+			if (entries > this.length && this.length < this.maximumLength) {
+				resize(Math.min(this.maximumLength, tableLength(entries)));
+			}
+		}
+
+		private void resize(int length) {
+			this.length = length;
+			this.table = new long[length / 16 * 4];
+			this.sampleSize = length * 10;
+			this.additions = 0;
+		}
+
+		private static int tableLength(int counters) {
+			return Integer.highestOneBit(counters - 1) << 1;
+		}
+
+		void increment(int hash) {
+			boolean added = false;
+			for (int i = 0; i < 4; i++) {
+				int index = indexOf(hash, i);
+				int shift = counterShift(hash, i);
+				if (((this.table[index] >>> shift) & 0xfL) < 15) {
+					this.table[index] += (1L << shift);
+					added = true;
+				}
+			}
+			if (added && ++this.additions == this.sampleSize) {
+				for (int i = 0; i < this.table.length; i++) {
+					this.table[i] = (this.table[i] >>> 1) & 0x7777777777777777L;
+				}
+				this.additions /= 2;
+			}
+		}
+
+		int frequency(int hash) {
+			int frequency = 15;
+			for (int i = 0; i < 4; i++) {
+				frequency = Math.min(frequency, (int) ((this.table[indexOf(hash, i)] >>> counterShift(hash, i)) & 0xfL));
+			}
+			return frequency;
+		}
+
+		private int indexOf(int hash, int row) {
+			long h = (hash + SEEDS[row]) * SEEDS[row];
+			h += (h >>> 32);
+			int rowLength = this.table.length / 4;
+			return row * rowLength + (int) (h & (rowLength - 1));
+		}
+
+		private int counterShift(int hash, int row) {
+			long h = (hash ^ SEEDS[row]) * 0x9e3779b97f4a7c15L;
+			return (int) ((h >>> 60) << 2);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ *
+ */
+package org.vsg.common.i18n;
+
+/**
+ * Statistics of a bounded MessageFormat cache at one point in time.
+ * @author vison ruan
+ *
+ */
+public final class CacheStats {
+
+	private final long hitCount;
+
+	private final long missCount;
+
+	private final long evictionCount;
+
+	private final long size;
+
+	private final long weightedSize;
+
+	private final long maximumWeight;
+
+
+	CacheStats(long hitCount, long missCount, long evictionCount, long size, long weightedSize, long maximumWeight) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.size = size;
+		this.weightedSize = weightedSize;
+		this.maximumWeight = maximumWeight;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Return the ratio of hits to lookups, or 1 if there were no lookups.
+	 */
+	public double getHitRate() {
+		long requests = this.hitCount + this.missCount;
+		return (requests > 0 ? (double) this.hitCount / requests : 1.0);
+	}
+
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Return the number of cached entries.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Return the total weight of the cached entries.
+	 */
+	public long getWeightedSize() {
+		return weightedSize;
+	}
+
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStats[hits=" + this.hitCount + ", misses=" + this.missCount + ", evictions=" +
+				this.evictionCount + ", size=" + this.size + ", weight=" + this.weightedSize + "/" +
+				this.maximumWeight + "]";
+	}
+}
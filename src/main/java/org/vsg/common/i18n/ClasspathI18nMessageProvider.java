@@ -4,9 +4,11 @@
 package org.vsg.common.i18n;
 
 import java.io.File;
+import java.net.JarURLConnection;
 import java.net.URL;
-import java.util.Enumeration;
-import java.util.Properties;
+import java.net.URLConnection;
+import java.util.Map;
+import java.util.jar.JarEntry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,34 +22,31 @@ public class ClasspathI18nMessageProvider extends ReLoaderI18nMessageSource {
 	
 	private static Logger logger = LoggerFactory.getLogger( ClasspathI18nMessageProvider.class );
 
-	
+	private ClassLoader bundleClassLoader;
+
 	/**
-	 * copy all property handle 
-	 * @param desc
-	 * @param org
+	 * Set the ClassLoader to load resource bundles with.
+	 * <p>Default is the ClassLoader that loaded this class.
 	 */
-	private void copyProperties(Properties desc , Properties org) {
-		for (Enumeration propertyNames = org.propertyNames(); propertyNames.hasMoreElements(); ) {
-			Object key = propertyNames.nextElement();
-		    desc.put(key, org.get(key));
-		}
+	public void setBundleClassLoader(ClassLoader classLoader) {
+		this.bundleClassLoader = classLoader;
 	}
 
+	/**
+	 * Return the ClassLoader to load resource bundles with.
+	 */
+	protected ClassLoader getBundleClassLoader() {
+		return (this.bundleClassLoader != null ? this.bundleClassLoader : this.getClass().getClassLoader());
+	}
+	
 	@Override
 	PropertiesHolder refreshResourceProperties(String filename,
 			PropertiesHolder propHolder) {
-		// TODO Auto-generated method stub
-		long refreshTimestamp = (this.cacheMillis < 0) ? -1 : System.currentTimeMillis();
-
 		// --- find resource ---
-		ClassLoader clsLoader = this.getClass().getClassLoader();
+		ClassLoader clsLoader = getBundleClassLoader();
 		
 		try {
 			
-			long fileTimestamp = -1;
-
-			Properties integProps =  new Properties();
-			
 			String file = filename + PROPERTIES_SUFFIX;
 			// ---- read the i18n file in jar ---			
 			URL url = clsLoader.getResource(file);
@@ -58,19 +57,11 @@ public class ClasspathI18nMessageProvider extends ReLoaderI18nMessageSource {
 			}
 
 			
-			Properties props = loadProperties(url, file);
+			long fileTimestamp = resolveLastModified(url);
+			Map<String, String> messages = loadMessages(url, file);
 
-			copyProperties(integProps , props);
-
-			
-			// --- end loop ---
-			propHolder = new PropertiesHolder(integProps, fileTimestamp);				
+			propHolder = new PropertiesHolder(messages, fileTimestamp);
 
-			
-			// --- put the all properties ---
-			this.getCachedProperties().put(file, propHolder);				
-			
-			
 		} catch (Exception ex) {
 
 			if (logger.isWarnEnabled()) {
@@ -81,7 +72,38 @@ public class ClasspathI18nMessageProvider extends ReLoaderI18nMessageSource {
 			
 		return propHolder;
 	}
-	
-	
-	
+
+	@Override
+	protected long getLastModified(String filename) {
+		URL url = getBundleClassLoader().getResource(filename + PROPERTIES_SUFFIX);
+		return (url != null ? resolveLastModified(url) : -1);
+	}
+
+	/**
+	 * Determine the last-modified timestamp of a bundle file, either a
+	 * file on disk or an entry in a jar.
+	 * @return the timestamp, or -1 if it can't be determined
+	 */
+	private long resolveLastModified(URL url) {
+		try {
+			if ("file".equals(url.getProtocol())) {
+				long lastModified = new File(url.toURI()).lastModified();
+				return (lastModified > 0 ? lastModified : -1);
+			}
+			URLConnection connection = url.openConnection();
+			if (connection instanceof JarURLConnection) {
+				JarEntry entry = ((JarURLConnection) connection).getJarEntry();
+				return (entry != null && entry.getTime() > 0 ? entry.getTime() : -1);
+			}
+			long lastModified = connection.getLastModified();
+			return (lastModified > 0 ? lastModified : -1);
+		}
+		catch (Exception ex) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Could not determine last-modified timestamp of [" + url + "]", ex);
+			}
+			return -1;
+		}
+	}
+
 }
@@ -0,0 +1,308 @@
+/**
+ *
+ */
+package org.vsg.common.i18n;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Message source backed by the {@link CompiledMessageBundle} classes that
+ * {@link MessageBundleCompiler} generates at build time. Messages are
+ * loaded with the classes; there is no resource lookup or properties
+ * parsing at runtime.
+ * <p>Fallbacks are resolved like {@link ReLoaderI18nMessageSource} does:
+ * for each basename in turn, the messages of the most specific Locale win,
+ * e.g. for "zh_CN" the classes "Messages_zh_CN", "Messages_zh", then the
+ * ones for the system Locale (if applicable), and finally the default
+ * class "Messages".
+ * @author vison ruan
+ *
+ */
+public class CompiledBundleMessageSource extends AbstractMessageSource {
+
+	private static Logger logger = LoggerFactory.getLogger( CompiledBundleMessageSource.class );
+
+	private static final CompiledMessageBundle EMPTY_BUNDLE = new CompiledMessageBundle(new String[0], new String[0]) {
+	};
+
+	private String bundleClassName;
+
+	private ClassLoader bundleClassLoader;
+
+	private boolean fallbackToSystemLocale = true;
+
+	/** Fallback-resolved bundles per Locale */
+	private final ConcurrentMap<Locale, CompiledMessageBundle> cachedBundles =
+			new ConcurrentHashMap<Locale, CompiledMessageBundle>();
+
+	/** Generated bundle class instances per Locale, {@link #EMPTY_BUNDLE} if none */
+	private final ConcurrentMap<Locale, CompiledMessageBundle> loadedBundles =
+			new ConcurrentHashMap<Locale, CompiledMessageBundle>();
+
+	/** Default Locale the cached bundles were resolved for */
+	private volatile Locale fallbackDefaultLocale = Locale.getDefault();
+
+	/** Incremented whenever the cached bundles get dropped */
+	private final AtomicLong messageGeneration = new AtomicLong();
+
+	private final ConcurrentMap<Locale, ConcurrentMap<String, MessageFormat>> cachedMessageFormats =
+			new ConcurrentHashMap<Locale, ConcurrentMap<String, MessageFormat>>();
+
+
+	/**
+	 * Set the fully qualified name of the default bundle class, as passed
+	 * to {@link MessageBundleCompiler#compile}.
+	 */
+	public void setBundleClassName(String bundleClassName) {
+		this.bundleClassName = bundleClassName;
+		this.loadedBundles.clear();
+		clearBundles();
+	}
+
+	public String getBundleClassName() {
+		return bundleClassName;
+	}
+
+	/**
+	 * Set the ClassLoader to load the bundle classes with.
+	 * <p>Default is the ClassLoader that loaded this class.
+	 */
+	public void setBundleClassLoader(ClassLoader bundleClassLoader) {
+		this.bundleClassLoader = bundleClassLoader;
+		this.loadedBundles.clear();
+		clearBundles();
+	}
+
+	/**
+	 * Set whether to fall back to the system Locale if no classes for a
+	 * specific Locale have been found. Default is "true"; as with
+	 * {@link ReLoaderI18nMessageSource#setFallbackToSystemLocale}.
+	 * <p>Falling back requires classes generated for the system Locale.
+	 */
+	public void setFallbackToSystemLocale(boolean fallbackToSystemLocale) {
+		this.fallbackToSystemLocale = fallbackToSystemLocale;
+		clearBundles();
+	}
+
+	/**
+	 * Return whether to fall back to the system Locale.
+	 */
+	public boolean isFallbackToSystemLocale() {
+		return this.fallbackToSystemLocale;
+	}
+
+	/**
+	 * Return the Locales whose generated classes a Locale falls back to,
+	 * most specific first, as {@link ReLoaderI18nMessageSource#calculateFilenamesForLocale}
+	 * does for bundle files: e.g. "zh_CN" and "zh" for "zh_CN".
+	 */
+	static List<Locale> getCandidateLocales(Locale locale) {
+		List<Locale> result = new ArrayList<Locale>(3);
+		String language = locale.getLanguage();
+		String country = locale.getCountry();
+		String variant = locale.getVariant();
+		if (language.length() > 0) {
+			result.add(0, new Locale(language));
+		}
+		if (country.length() > 0) {
+			result.add(0, new Locale(language, country));
+		}
+		if (variant.length() > 0 && (language.length() > 0 || country.length() > 0)) {
+			result.add(0, new Locale(language, country, variant));
+		}
+		return result;
+	}
+
+	/**
+	 * Return the name of the bundle class for the given Locale.
+	 * @param className the name of the default bundle class
+	 * @param locale the Locale, {@link Locale#ROOT} for the default class
+	 */
+	static String getBundleClassName(String className, Locale locale) {
+		StringBuilder name = new StringBuilder(className);
+		if (locale.getLanguage().length() > 0) {
+			name.append('_').append(locale.getLanguage());
+		}
+		if (locale.getCountry().length() > 0) {
+			name.append('_').append(locale.getCountry());
+		}
+		if (locale.getVariant().length() > 0) {
+			name.append('_').append(locale.getVariant());
+		}
+		return name.toString();
+	}
+
+
+	/**
+	 * Compiled bundles never change, so only the bundle class, the system
+	 * Locale to fall back to, the parent and the common messages affect the
+	 * resolution stamp.
+	 */
+	@Override
+	protected long getResolutionStamp() {
+		return getChainResolutionStamp(0);
+	}
+
+	@Override
+	protected long getMessageGeneration() {
+		return this.messageGeneration.get();
+	}
+
+	@Override
+	protected String resolveCodeWithoutArguments(String code, Locale locale) {
+		return getBundle(locale).getMessage(code);
+	}
+
+	@Override
+	protected MessageFormat resolveCode(String code, Locale locale) {
+		checkDefaultLocale();
+		ConcurrentMap<String, MessageFormat> messageFormats = this.cachedMessageFormats.get(locale);
+		if (messageFormats == null) {
+			messageFormats = new ConcurrentHashMap<String, MessageFormat>();
+			ConcurrentMap<String, MessageFormat> existing = this.cachedMessageFormats.putIfAbsent(locale, messageFormats);
+			if (existing != null) {
+				messageFormats = existing;
+			}
+		}
+		MessageFormat messageFormat = messageFormats.get(code);
+		if (messageFormat == null) {
+			String msg = getBundle(locale).getMessage(code);
+			if (msg == null) {
+				return null;
+			}
+			messageFormat = createMessageFormat(msg, locale);
+			MessageFormat existing = messageFormats.putIfAbsent(code, messageFormat);
+			if (existing != null) {
+				messageFormat = existing;
+			}
+		}
+		return messageFormat;
+	}
+
+	/**
+	 * Get the fallback-resolved bundle for the given Locale, loading the
+	 * bundle classes on first use.
+	 */
+	protected CompiledMessageBundle getBundle(Locale locale) {
+		checkDefaultLocale();
+		CompiledMessageBundle bundle = this.cachedBundles.get(locale);
+		if (bundle != null) {
+			return bundle;
+		}
+		List<Locale> candidates = new ArrayList<Locale>(getCandidateLocales(locale));
+		if (this.fallbackToSystemLocale && !locale.equals(Locale.getDefault())) {
+			for (Locale fallbackLocale : getCandidateLocales(Locale.getDefault())) {
+				if (!candidates.contains(fallbackLocale)) {
+					candidates.add(fallbackLocale);
+				}
+			}
+		}
+		candidates.add(Locale.ROOT);
+		bundle = mergeBundles(candidates);
+		CompiledMessageBundle existing = this.cachedBundles.putIfAbsent(locale, bundle);
+		return (existing != null ? existing : bundle);
+	}
+
+	/**
+	 * Merge the bundles of the given Locales into one: the message of the
+	 * first basename wins, and within a basename the one of the first Locale.
+	 */
+	private CompiledMessageBundle mergeBundles(List<Locale> locales) {
+		Map<String, String> messages = new HashMap<String, String>();
+		Map<String, Long> ranks = new HashMap<String, Long>();
+		for (int position = 0; position < locales.size(); position++) {
+			CompiledMessageBundle bundle = getLoadedBundle(locales.get(position));
+			for (int i = 0; i < bundle.size(); i++) {
+				String code = bundle.getCode(i);
+				long rank = ((long) bundle.getBasename(i) << 32) | position;
+				Long current = ranks.get(code);
+				if (current == null || rank < current) {
+					ranks.put(code, rank);
+					messages.put(code, bundle.getMessage(i));
+				}
+			}
+		}
+		List<String> codes = new ArrayList<String>(messages.keySet());
+		Collections.sort(codes);
+		String[] sortedMessages = new String[codes.size()];
+		for (int i = 0; i < sortedMessages.length; i++) {
+			sortedMessages[i] = messages.get(codes.get(i));
+		}
+		return new CompiledMessageBundle(codes.toArray(new String[codes.size()]), sortedMessages) {
+		};
+	}
+
+	/**
+	 * Get the instance of the bundle class generated for exactly the given
+	 * Locale, or an empty bundle if there is none.
+	 */
+	private CompiledMessageBundle getLoadedBundle(Locale locale) {
+		CompiledMessageBundle bundle = this.loadedBundles.get(locale);
+		if (bundle == null) {
+			bundle = loadBundleClass(locale.equals(Locale.ROOT) ?
+					this.bundleClassName : getBundleClassName(this.bundleClassName, locale));
+			if (bundle == null) {
+				bundle = EMPTY_BUNDLE;
+			}
+			this.loadedBundles.putIfAbsent(locale, bundle);
+		}
+		return bundle;
+	}
+
+	/**
+	 * Drop the fallback-resolved bundles once the system Locale they fall
+	 * back to has changed.
+	 */
+	private void checkDefaultLocale() {
+		Locale defaultLocale = Locale.getDefault();
+		if (!defaultLocale.equals(this.fallbackDefaultLocale)) {
+			this.fallbackDefaultLocale = defaultLocale;
+			clearBundles();
+		}
+	}
+
+	/**
+	 * Drop the fallback-resolved bundles and everything derived from them.
+	 */
+	private void clearBundles() {
+		this.cachedBundles.clear();
+		this.cachedMessageFormats.clear();
+		this.messageGeneration.incrementAndGet();
+		invalidateResolutionPlans();
+	}
+
+	private CompiledMessageBundle loadBundleClass(String className) {
+		ClassLoader classLoader = (this.bundleClassLoader != null ? this.bundleClassLoader : getClass().getClassLoader());
+		try {
+			Class<?> bundleClass = Class.forName(className, true, classLoader);
+			if (!CompiledMessageBundle.class.isAssignableFrom(bundleClass)) {
+				if (logger.isWarnEnabled()) {
+					logger.warn("Message bundle class [" + className + "] does not extend CompiledMessageBundle");
+				}
+				return null;
+			}
+			return (CompiledMessageBundle) bundleClass.getDeclaredConstructor().newInstance();
+		}
+		catch (ClassNotFoundException ex) {
+			return null;
+		}
+		catch (ReflectiveOperationException ex) {
+			if (logger.isWarnEnabled()) {
+				logger.warn("Could not instantiate message bundle class [" + className + "]", ex);
+			}
+			return null;
+		}
+	}
+}
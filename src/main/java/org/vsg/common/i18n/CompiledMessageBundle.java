@@ -0,0 +1,75 @@
+/**
+ *
+ */
+package org.vsg.common.i18n;
+
+import java.util.Arrays;
+
+/**
+ * Base class of the message bundle classes generated by
+ * {@link MessageBundleCompiler}: the messages of the bundle files of one
+ * Locale, across all basenames, held in static arrays of the generated
+ * class. Each message carries the position of the first basename whose
+ * file for the Locale defines it, so that {@link CompiledBundleMessageSource}
+ * can resolve fallbacks in the same order as a {@link ReLoaderI18nMessageSource}.
+ * @author vison ruan
+ *
+ */
+public abstract class CompiledMessageBundle {
+
+	private final String[] codes;
+
+	private final String[] messages;
+
+	private final int[] basenames;
+
+
+	/**
+	 * Create a new bundle of already fallback-resolved messages.
+	 * @param codes the message codes, sorted in {@link String#compareTo} order
+	 * @param messages the messages, in the order of the codes
+	 */
+	protected CompiledMessageBundle(String[] codes, String[] messages) {
+		this(codes, messages, new int[codes.length]);
+	}
+
+	/**
+	 * Create a new bundle.
+	 * @param codes the message codes, sorted in {@link String#compareTo} order
+	 * @param messages the messages, in the order of the codes
+	 * @param basenames the position of the basename each message was defined
+	 * for, in the order of the codes
+	 */
+	protected CompiledMessageBundle(String[] codes, String[] messages, int[] basenames) {
+		this.codes = codes;
+		this.messages = messages;
+		this.basenames = basenames;
+	}
+
+	/**
+	 * Return the message for the given code, or {@code null} if none.
+	 */
+	public String getMessage(String code) {
+		int index = Arrays.binarySearch(this.codes, code);
+		return (index >= 0 ? this.messages[index] : null);
+	}
+
+	/**
+	 * Return the number of messages in this bundle.
+	 */
+	public int size() {
+		return this.codes.length;
+	}
+
+	String getCode(int index) {
+		return this.codes[index];
+	}
+
+	String getMessage(int index) {
+		return this.messages[index];
+	}
+
+	int getBasename(int index) {
+		return this.basenames[index];
+	}
+}
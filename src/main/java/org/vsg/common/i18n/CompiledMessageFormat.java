@@ -0,0 +1,389 @@
+/**
+ *
+ */
+package org.vsg.common.i18n;
+
+import java.text.ChoiceFormat;
+import java.text.DateFormat;
+import java.text.Format;
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Immutable {@link MessageFormat} compiled once per pattern
+ * into literal segments and argument slots with typed sub-formats.
+ * <p>Rendering through {@link #render} does not require any lock: literals
+ * are shared, and typed sub-formats (which are not thread-safe in the JDK)
+ * are kept as prototypes and cloned for each use. The output is identical
+ * to the one of a plain {@code MessageFormat} for the same pattern and Locale.
+ * The {@code format} methods inherited from {@code MessageFormat} are final
+ * and keep its semantics, including the need to synchronize.
+ * <p>Patterns containing quotes inside an argument are not compiled;
+ * {@link #compile} returns a plain {@code MessageFormat} for those, which
+ * is not thread-safe: {@link MessageSourceSupport} formats a clone of it
+ * per call rather than synchronizing on it.
+ * <p>One or two arguments, numeric ones as primitives, can be rendered
+ * without an argument array: {@link #render(long)} and its siblings format
+ * a {@code long} through {@code NumberFormat.format(long)}, and append
+ * small non-negative numbers straight to the result where the Locale
+ * formats them as plain ASCII digits anyway.
+ * <p>The mutators inherited from {@code MessageFormat} are not supported.
+ * @author vison ruan
+ *
+ */
+@SuppressWarnings("serial")
+public final class CompiledMessageFormat extends MessageFormat {
+
+	/** Literal text before, between and after the argument slots */
+	private final String[] literals;
+
+	/** Argument number per slot, in pattern order */
+	private final int[] argumentNumbers;
+
+	/** Sub-format prototype per slot, or {@code null} for untyped arguments */
+	private final Format[] formats;
+
+	/** Whether a sub-format needs all arguments, i.e. a choice with nested arguments */
+	private final boolean choiceFormatted;
+
+	/** Whether untyped numbers from 0 to 999 format as their plain digits in this Locale */
+	private final boolean plainSmallNumbers;
+
+	private final boolean compiled;
+
+
+	private CompiledMessageFormat(String pattern, Locale locale, List<String> literals, List<Integer> argumentNumbers) {
+		super(pattern, locale);
+		Format[] parsedFormats = getFormats();
+		this.literals = literals.toArray(new String[literals.size()]);
+		this.argumentNumbers = new int[argumentNumbers.size()];
+		this.formats = new Format[argumentNumbers.size()];
+		boolean choiceFormatted = false;
+		for (int i = 0; i < this.argumentNumbers.length; i++) {
+			this.argumentNumbers[i] = argumentNumbers.get(i);
+			if (parsedFormats[i] != null) {
+				this.formats[i] = (Format) parsedFormats[i].clone();
+				choiceFormatted |= (parsedFormats[i] instanceof ChoiceFormat);
+			}
+		}
+		this.choiceFormatted = choiceFormatted;
+		NumberFormat numberFormat = NumberFormat.getInstance(locale);
+		this.plainSmallNumbers = (numberFormat.format(0).equals("0") && numberFormat.format(123).equals("123") &&
+				numberFormat.format(456).equals("456") && numberFormat.format(789).equals("789"));
+		this.compiled = true;
+	}
+
+	/**
+	 * Compile the given pattern for the given Locale.
+	 * @param pattern the message pattern
+	 * @param locale the Locale to format for
+	 * @return a {@code CompiledMessageFormat}, or a plain {@code MessageFormat}
+	 * if the pattern uses syntax that is not compiled
+	 * @throws IllegalArgumentException if the pattern is invalid
+	 */
+	public static MessageFormat compile(String pattern, Locale locale) {
+		String msg = (pattern != null ? pattern : "");
+		List<String> literals = new ArrayList<String>();
+		List<Integer> argumentNumbers = new ArrayList<Integer>();
+		if (locale == null || !parse(msg, literals, argumentNumbers)) {
+			return new MessageFormat(msg, locale);
+		}
+		CompiledMessageFormat messageFormat = new CompiledMessageFormat(msg, locale, literals, argumentNumbers);
+		if (messageFormat.getFormats().length != argumentNumbers.size()) {
+			return new MessageFormat(msg, locale);
+		}
+		return messageFormat;
+	}
+
+	/**
+	 * Split the pattern into literals and argument numbers, following the
+	 * quoting rules of {@link MessageFormat#applyPattern}.
+	 * @return {@code false} if the pattern cannot be compiled
+	 */
+	private static boolean parse(String pattern, List<String> literals, List<Integer> argumentNumbers) {
+		StringBuilder literal = new StringBuilder(pattern.length());
+		boolean inQuote = false;
+		int i = 0;
+		int length = pattern.length();
+		while (i < length) {
+			char ch = pattern.charAt(i);
+			if (ch == '\'') {
+				if (i + 1 < length && pattern.charAt(i + 1) == '\'') {
+					literal.append(ch);
+					i++;
+				}
+				else {
+					inQuote = !inQuote;
+				}
+			}
+			else if (ch == '{' && !inQuote) {
+				int end = findArgumentEnd(pattern, i + 1);
+				if (end < 0) {
+					return false;
+				}
+				int argumentNumber = parseArgumentNumber(pattern, i + 1, end);
+				if (argumentNumber < 0) {
+					return false;
+				}
+				literals.add(literal.toString());
+				literal.setLength(0);
+				argumentNumbers.add(argumentNumber);
+				i = end;
+			}
+			else {
+				literal.append(ch);
+			}
+			i++;
+		}
+		literals.add(literal.toString());
+		return true;
+	}
+
+	/**
+	 * Return the index of the brace closing the argument starting at the
+	 * given index, or -1 if unmatched or quoted.
+	 */
+	private static int findArgumentEnd(String pattern, int start) {
+		int braceStack = 0;
+		for (int i = start; i < pattern.length(); i++) {
+			char ch = pattern.charAt(i);
+			if (ch == '\'') {
+				return -1;
+			}
+			if (ch == '{') {
+				braceStack++;
+			}
+			else if (ch == '}') {
+				if (braceStack == 0) {
+					return i;
+				}
+				braceStack--;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Parse the plain decimal argument number preceding the first comma,
+	 * or return -1 if it is anything else.
+	 */
+	private static int parseArgumentNumber(String pattern, int start, int end) {
+		int comma = pattern.indexOf(',', start);
+		int numberEnd = (comma >= 0 && comma < end ? comma : end);
+		if (numberEnd == start || numberEnd - start > 4) {
+			return -1;
+		}
+		int argumentNumber = 0;
+		for (int i = start; i < numberEnd; i++) {
+			char ch = pattern.charAt(i);
+			if (ch < '0' || ch > '9') {
+				return -1;
+			}
+			argumentNumber = argumentNumber * 10 + (ch - '0');
+		}
+		return argumentNumber;
+	}
+
+
+	/**
+	 * Render the given arguments into a new String.
+	 * @param arguments the arguments, may be {@code null}
+	 * @return the formatted message
+	 */
+	public String render(Object[] arguments) {
+		if (this.argumentNumbers.length == 0) {
+			return this.literals[0];
+		}
+		StringBuilder result = new StringBuilder(this.literals[0].length() + 16 * this.argumentNumbers.length);
+		render(arguments, result);
+		return result.toString();
+	}
+
+	/**
+	 * Render the given arguments, appending to the given buffer.
+	 * @param arguments the arguments, may be {@code null}
+	 * @param result the buffer to append to
+	 */
+	public void render(Object[] arguments, StringBuilder result) {
+		result.append(this.literals[0]);
+		for (int i = 0; i < this.argumentNumbers.length; i++) {
+			int argumentNumber = this.argumentNumbers[i];
+			if (arguments == null || argumentNumber >= arguments.length) {
+				result.append('{').append(argumentNumber).append('}');
+			}
+			else {
+				result.append(formatArgument(arguments[argumentNumber], this.formats[i], arguments));
+			}
+			result.append(this.literals[i + 1]);
+		}
+	}
+
+	/**
+	 * Render a single numeric argument without boxing it.
+	 * @param arg0 argument {0}
+	 * @return the formatted message
+	 * @see #render(Object[])
+	 */
+	public String render(long arg0) {
+		return render(null, arg0, null, 0, 1, 1);
+	}
+
+	/**
+	 * Render an object and a numeric argument without boxing the number.
+	 * @param arg0 argument {0}
+	 * @param arg1 argument {1}
+	 * @return the formatted message
+	 * @see #render(Object[])
+	 */
+	public String render(Object arg0, long arg1) {
+		return render(arg0, 0, null, arg1, 2, 2);
+	}
+
+	/**
+	 * Render two numeric arguments without boxing them.
+	 * @param arg0 argument {0}
+	 * @param arg1 argument {1}
+	 * @return the formatted message
+	 * @see #render(Object[])
+	 */
+	public String render(long arg0, long arg1) {
+		return render(null, arg0, null, arg1, 3, 2);
+	}
+
+	/**
+	 * Render up to two arguments, each given either as object or as number.
+	 * @param numbers bit mask of the arguments given as number
+	 * @param argumentCount the number of arguments
+	 */
+	private String render(Object object0, long number0, Object object1, long number1, int numbers, int argumentCount) {
+		if (this.choiceFormatted) {
+			// nested choice arguments are rendered from the argument array
+			Object[] arguments = new Object[argumentCount];
+			arguments[0] = ((numbers & 1) != 0 ? Long.valueOf(number0) : object0);
+			if (argumentCount > 1) {
+				arguments[1] = ((numbers & 2) != 0 ? Long.valueOf(number1) : object1);
+			}
+			return render(arguments);
+		}
+		if (this.argumentNumbers.length == 0) {
+			return this.literals[0];
+		}
+		StringBuilder result = new StringBuilder(this.literals[0].length() + 16 * this.argumentNumbers.length);
+		result.append(this.literals[0]);
+		for (int i = 0; i < this.argumentNumbers.length; i++) {
+			int argumentNumber = this.argumentNumbers[i];
+			if (argumentNumber >= argumentCount) {
+				result.append('{').append(argumentNumber).append('}');
+			}
+			else if ((numbers & (1 << argumentNumber)) != 0) {
+				appendNumber((argumentNumber == 0 ? number0 : number1), this.formats[i], result);
+			}
+			else {
+				result.append(formatArgument((argumentNumber == 0 ? object0 : object1), this.formats[i], null));
+			}
+			result.append(this.literals[i + 1]);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Format a numeric argument the way {@code MessageFormat.subformat}
+	 * formats the same number boxed.
+	 */
+	private void appendNumber(long number, Format format, StringBuilder result) {
+		if (format == null) {
+			if (this.plainSmallNumbers && number >= 0 && number < 1000) {
+				result.append(number);
+			}
+			else {
+				result.append(NumberFormat.getInstance(getLocale()).format(number));
+			}
+		}
+		else if (format instanceof NumberFormat) {
+			result.append(((NumberFormat) format.clone()).format(number));
+		}
+		else {
+			// e.g. a date format given milliseconds
+			result.append(formatArgument(Long.valueOf(number), format, null));
+		}
+	}
+
+	/**
+	 * Format a single argument the way {@code MessageFormat.subformat} does.
+	 */
+	private String formatArgument(Object obj, Format format, Object[] arguments) {
+		if (obj == null) {
+			return "null";
+		}
+		if (format != null) {
+			if (format instanceof ChoiceFormat) {
+				// ChoiceFormat is not modified by formatting, no need to copy it.
+				String arg = format.format(obj);
+				if (arg.indexOf('{') >= 0) {
+					return applyTo(compile(arg, getLocale()), arguments);
+				}
+				return arg;
+			}
+			return ((Format) format.clone()).format(obj);
+		}
+		if (obj instanceof Number) {
+			return NumberFormat.getInstance(getLocale()).format(obj);
+		}
+		if (obj instanceof Date) {
+			return DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, getLocale()).format(obj);
+		}
+		if (obj instanceof String) {
+			return (String) obj;
+		}
+		String arg = obj.toString();
+		return (arg != null ? arg : "null");
+	}
+
+	private static String applyTo(MessageFormat messageFormat, Object[] arguments) {
+		if (messageFormat instanceof CompiledMessageFormat) {
+			return ((CompiledMessageFormat) messageFormat).render(arguments);
+		}
+		return messageFormat.format(arguments);
+	}
+
+
+	@Override
+	public void applyPattern(String pattern) {
+		if (this.compiled) {
+			throw new UnsupportedOperationException("CompiledMessageFormat is immutable");
+		}
+		super.applyPattern(pattern);
+	}
+
+	@Override
+	public void setLocale(Locale locale) {
+		if (this.compiled) {
+			throw new UnsupportedOperationException("CompiledMessageFormat is immutable");
+		}
+		super.setLocale(locale);
+	}
+
+	@Override
+	public void setFormats(Format[] newFormats) {
+		throw new UnsupportedOperationException("CompiledMessageFormat is immutable");
+	}
+
+	@Override
+	public void setFormat(int formatElementIndex, Format newFormat) {
+		throw new UnsupportedOperationException("CompiledMessageFormat is immutable");
+	}
+
+	@Override
+	public void setFormatsByArgumentIndex(Format[] newFormats) {
+		throw new UnsupportedOperationException("CompiledMessageFormat is immutable");
+	}
+
+	@Override
+	public void setFormatByArgumentIndex(int argumentIndex, Format newFormat) {
+		throw new UnsupportedOperationException("CompiledMessageFormat is immutable");
+	}
+}
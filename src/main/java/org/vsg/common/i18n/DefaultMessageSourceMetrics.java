@@ -0,0 +1,248 @@
+package org.vsg.common.i18n;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link MessageSourceMetrics} counting into {@link LongAdder}s, with
+ * power-of-two latency histograms for loads, compilation and formatting.
+ * <p>Recording never blocks; {@link #snapshot()} reads all figures without
+ * stopping writers, so a snapshot taken under load is not atomic across
+ * figures.
+ * <p>One instance may be shared by several message sources to aggregate them.
+ * @author vison ruan
+ *
+ */
+public class DefaultMessageSourceMetrics implements MessageSourceMetrics {
+
+	private final LongAdder lookupHits = new LongAdder();
+
+	private final LongAdder lookupMisses = new LongAdder();
+
+	private final LongAdder resolveHits = new LongAdder();
+
+	private final LongAdder resolveMisses = new LongAdder();
+
+	private final LongAdder missingFiles = new LongAdder();
+
+	private final Histogram loads = new Histogram();
+
+	private final Histogram compiles = new Histogram();
+
+	private final Histogram formats = new Histogram();
+
+
+	@Override
+	public void recordLookup(boolean found) {
+		(found ? this.lookupHits : this.lookupMisses).increment();
+	}
+
+	@Override
+	public void recordResolve(boolean found) {
+		(found ? this.resolveHits : this.resolveMisses).increment();
+	}
+
+	@Override
+	public void recordLoad(String filename, boolean found, long nanos) {
+		if (!found) {
+			this.missingFiles.increment();
+		}
+		this.loads.record(nanos);
+	}
+
+	@Override
+	public void recordCompile(long nanos) {
+		this.compiles.record(nanos);
+	}
+
+	@Override
+	public void recordFormat(long nanos) {
+		this.formats.record(nanos);
+	}
+
+	/**
+	 * Return the current figures.
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this.lookupHits.sum(), this.lookupMisses.sum(), this.resolveHits.sum(),
+				this.resolveMisses.sum(), this.missingFiles.sum(), this.loads.snapshot(),
+				this.compiles.snapshot(), this.formats.snapshot());
+	}
+
+
+	/**
+	 * Latency histogram with one bucket per power of two nanoseconds.
+	 */
+	private static final class Histogram {
+
+		private final LongAdder[] buckets = new LongAdder[64];
+
+		private final LongAdder totalNanos = new LongAdder();
+
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+		Histogram() {
+			for (int i = 0; i < this.buckets.length; i++) {
+				this.buckets[i] = new LongAdder();
+			}
+		}
+
+		void record(long nanos) {
+			long value = Math.max(nanos, 0);
+			this.buckets[64 - Long.numberOfLeadingZeros(value) - (value == 0 ? 0 : 1)].increment();
+			this.totalNanos.add(value);
+			this.maxNanos.accumulate(value);
+		}
+
+		TimerSnapshot snapshot() {
+			long[] counts = new long[this.buckets.length];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = this.buckets[i].sum();
+			}
+			return new TimerSnapshot(counts, this.totalNanos.sum(), this.maxNanos.get());
+		}
+	}
+
+
+	/**
+	 * Figures of one timed operation.
+	 */
+	public static final class TimerSnapshot {
+
+		private final long[] buckets;
+
+		private final long count;
+
+		private final long totalNanos;
+
+		private final long maxNanos;
+
+		TimerSnapshot(long[] buckets, long totalNanos, long maxNanos) {
+			long count = 0;
+			for (long bucket : buckets) {
+				count += bucket;
+			}
+			this.buckets = buckets;
+			this.count = count;
+			this.totalNanos = totalNanos;
+			this.maxNanos = maxNanos;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+
+		public long getMeanNanos() {
+			return (this.count > 0 ? this.totalNanos / this.count : 0);
+		}
+
+		/**
+		 * Return an upper bound of the given percentile, precise to a power of two.
+		 * @param percentile the percentile, e.g. 0.99
+		 */
+		public long getPercentileNanos(double percentile) {
+			long rank = (long) Math.ceil(percentile * this.count);
+			long seen = 0;
+			for (int i = 0; i < this.buckets.length; i++) {
+				seen += this.buckets[i];
+				if (seen >= rank && seen > 0) {
+					long upperBound = (i >= 62 ? Long.MAX_VALUE : (2L << i) - 1);
+					return Math.min(upperBound, this.maxNanos);
+				}
+			}
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			return "[count=" + this.count + ", mean=" + getMeanNanos() + "ns, p99=" +
+					getPercentileNanos(0.99) + "ns, max=" + this.maxNanos + "ns]";
+		}
+	}
+
+
+	/**
+	 * Figures of a {@link DefaultMessageSourceMetrics} at one point in time.
+	 */
+	public static final class Snapshot {
+
+		private final long lookupHits;
+
+		private final long lookupMisses;
+
+		private final long resolveHits;
+
+		private final long resolveMisses;
+
+		private final long missingFiles;
+
+		private final TimerSnapshot loads;
+
+		private final TimerSnapshot compiles;
+
+		private final TimerSnapshot formats;
+
+		Snapshot(long lookupHits, long lookupMisses, long resolveHits, long resolveMisses, long missingFiles,
+				TimerSnapshot loads, TimerSnapshot compiles, TimerSnapshot formats) {
+			this.lookupHits = lookupHits;
+			this.lookupMisses = lookupMisses;
+			this.resolveHits = resolveHits;
+			this.resolveMisses = resolveMisses;
+			this.missingFiles = missingFiles;
+			this.loads = loads;
+			this.compiles = compiles;
+			this.formats = formats;
+		}
+
+		public long getLookupHits() {
+			return lookupHits;
+		}
+
+		public long getLookupMisses() {
+			return lookupMisses;
+		}
+
+		public long getResolveHits() {
+			return resolveHits;
+		}
+
+		public long getResolveMisses() {
+			return resolveMisses;
+		}
+
+		/**
+		 * Return the number of loads that found no bundle file.
+		 */
+		public long getMissingFiles() {
+			return missingFiles;
+		}
+
+		public TimerSnapshot getLoads() {
+			return loads;
+		}
+
+		public TimerSnapshot getCompiles() {
+			return compiles;
+		}
+
+		public TimerSnapshot getFormats() {
+			return formats;
+		}
+
+		@Override
+		public String toString() {
+			return "MessageSourceMetrics[lookups=" + this.lookupHits + "/" + (this.lookupHits + this.lookupMisses) +
+					", resolves=" + this.resolveHits + "/" + (this.resolveHits + this.resolveMisses) +
+					", loads=" + this.loads + ", missingFiles=" + this.missingFiles +
+					", compiles=" + this.compiles + ", formats=" + this.formats + "]";
+		}
+	}
+}
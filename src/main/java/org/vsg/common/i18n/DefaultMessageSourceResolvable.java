@@ -16,6 +16,9 @@ public class DefaultMessageSourceResolvable implements MessageSourceResolvable,
 
 	private final String defaultMessage;
 
+	/** Cached hash code, 0 if not computed yet */
+	private transient int hash;
+
 
 	/**
 	 * Create a new DefaultMessageSourceResolvable.
@@ -134,11 +137,20 @@ public class DefaultMessageSourceResolvable implements MessageSourceResolvable,
 				nullSafeEquals(getDefaultMessage(), otherResolvable.getDefaultMessage());
 	}
 
+	/**
+	 * Return the hash code, computed once: resolvables are used as map keys,
+	 * e.g. by {@link MessageSource#getResolvableMessages}. The codes and
+	 * arguments arrays must not be modified after construction.
+	 */
 	@Override
 	public int hashCode() {
-		int hashCode = nullSafeHashCode(getCodes());
-		hashCode = 29 * hashCode + nullSafeHashCode(getArguments());
-		hashCode = 29 * hashCode + nullSafeHashCode(getDefaultMessage());
+		int hashCode = this.hash;
+		if (hashCode == 0) {
+			hashCode = nullSafeHashCode(getCodes());
+			hashCode = 29 * hashCode + nullSafeHashCode(getArguments());
+			hashCode = 29 * hashCode + nullSafeHashCode(getDefaultMessage());
+			this.hash = hashCode;
+		}
 		return hashCode;
 	}
 	
@@ -0,0 +1,86 @@
+/**
+ * 
+ */
+package org.vsg.common.i18n;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fallback chain of bundle files for one Locale, across all basenames in
+ * lookup order. The filenames are fixed for the current basenames and
+ * system Locale; the holder of each file is resolved lazily on first use
+ * and remembered for the properties generation it was resolved in.
+ * <p>Lookups walk the chain by index without building filenames or
+ * copying lists. Once a bundle file gets replaced, the remembered holders
+ * are dropped in place and re-resolved through the holder cache, while
+ * the filenames are kept.
+ * @author vison ruan
+ *
+ */
+final class FallbackChain {
+
+	private final String[] filenames;
+
+	private volatile ResolvedHolders resolvedHolders;
+
+
+	FallbackChain(String[] filenames) {
+		this.filenames = filenames;
+		this.resolvedHolders = new ResolvedHolders(-1, filenames.length);
+	}
+
+	int size() {
+		return this.filenames.length;
+	}
+
+	String getFilename(int index) {
+		return this.filenames[index];
+	}
+
+	/**
+	 * Return the holder resolved for the file at the given index in the
+	 * given properties generation, or {@code null} if none yet.
+	 */
+	PropertiesHolder getHolder(int index, long generation) {
+		return getResolvedHolders(generation).holders.get(index);
+	}
+
+	/**
+	 * Remember the holder resolved for the file at the given index in the
+	 * given properties generation. Ignored if a later generation has been
+	 * seen meanwhile.
+	 */
+	void setHolder(int index, PropertiesHolder holder, long generation) {
+		ResolvedHolders current = this.resolvedHolders;
+		if (current.generation == generation) {
+			current.holders.set(index, holder);
+		}
+	}
+
+	private ResolvedHolders getResolvedHolders(long generation) {
+		ResolvedHolders current = this.resolvedHolders;
+		if (current.generation < generation) {
+			// Holders resolved before a bundle file got replaced must not
+			// be reused: start over with empty slots for the new generation.
+			current = new ResolvedHolders(generation, this.filenames.length);
+			this.resolvedHolders = current;
+		}
+		return current;
+	}
+
+
+	/**
+	 * Holders resolved within one properties generation.
+	 */
+	private static final class ResolvedHolders {
+
+		private final long generation;
+
+		private final AtomicReferenceArray<PropertiesHolder> holders;
+
+		ResolvedHolders(long generation, int size) {
+			this.generation = generation;
+			this.holders = new AtomicReferenceArray<PropertiesHolder>(size);
+		}
+	}
+}
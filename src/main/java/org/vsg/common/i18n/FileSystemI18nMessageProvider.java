@@ -0,0 +1,348 @@
+/**
+ *
+ */
+package org.vsg.common.i18n;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Message provider reading resource bundles from directories on the file
+ * system, e.g. basename "i18n/message" from "/etc/app/i18n/message_zh_CN.properties".
+ * <p>Bundle files are cached forever; request threads never check the file
+ * system again. Instead, the directories of all bundle files looked up so
+ * far are watched through a {@link WatchService}, and a background thread
+ * reloads exactly the changed files and publishes the new holders. A change
+ * becomes visible after the reload delay plus the time needed to parse
+ * the file and rebuild the merged views. For a directory that doesn't exist
+ * yet, its nearest existing ancestor is watched until it gets created; the
+ * same happens for a watched directory that gets deleted.
+ * <p>Call {@link #close()} to stop watching.
+ * @author vison ruan
+ *
+ */
+public class FileSystemI18nMessageProvider extends ReLoaderI18nMessageSource implements Closeable {
+
+	private static Logger logger = LoggerFactory.getLogger( FileSystemI18nMessageProvider.class );
+
+	private File[] directories = new File[0];
+
+	private long reloadDelayMillis = 100;
+
+	private final Set<Path> watchedDirectories = ConcurrentHashMap.<Path> newKeySet();
+
+	/** Directories of bundle files looked up so far that don't exist yet */
+	private final Set<Path> pendingDirectories = ConcurrentHashMap.<Path> newKeySet();
+
+	private final ReentrantLock watchLock = new ReentrantLock();
+
+	private WatchService watchService;
+
+	private Thread watchThread;
+
+	private volatile boolean closed;
+
+
+	/**
+	 * Set the directories to resolve bundle files in. For each bundle file,
+	 * the first directory containing it wins.
+	 */
+	public void setDirectories(File[] directories) {
+		this.directories = directories;
+	}
+
+	public File[] getDirectories() {
+		return directories;
+	}
+
+	/**
+	 * Set how long to wait after a change event before reloading, so that
+	 * a file written in several steps gets reloaded once. Default is 100.
+	 */
+	public void setReloadDelayMillis(long reloadDelayMillis) {
+		this.reloadDelayMillis = reloadDelayMillis;
+	}
+
+	@Override
+	PropertiesHolder refreshResourceProperties(String filename, PropertiesHolder propHolder) {
+		String file = filename + PROPERTIES_SUFFIX;
+		for (File directory : this.directories) {
+			watch(new File(directory, file).getParentFile());
+		}
+		File resource = findFile(file);
+		if (resource == null) {
+			return propHolder;
+		}
+		try {
+			Map<String, String> messages = loadMessages(resource.toURI().toURL(), file);
+			return new PropertiesHolder(messages, resource.lastModified());
+		}
+		catch (IOException ex) {
+			if (logger.isWarnEnabled()) {
+				logger.warn("Could not parse properties file [" + resource + "]", ex);
+			}
+			return propHolder;
+		}
+	}
+
+	@Override
+	protected long getLastModified(String filename) {
+		File resource = findFile(filename + PROPERTIES_SUFFIX);
+		return (resource != null ? resource.lastModified() : -1);
+	}
+
+	private File findFile(String file) {
+		for (File directory : this.directories) {
+			File resource = new File(directory, file);
+			if (resource.isFile()) {
+				return resource;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Watch the given directory or, if it doesn't exist yet, its nearest
+	 * existing ancestor, so that the directory gets watched once created.
+	 */
+	private void watch(File directory) {
+		if (this.closed) {
+			return;
+		}
+		Path path = directory.toPath().toAbsolutePath().normalize();
+		if (this.watchedDirectories.contains(path)) {
+			return;
+		}
+		if (!Files.isDirectory(path)) {
+			this.pendingDirectories.add(path);
+			Path ancestor = path.getParent();
+			while (ancestor != null && !Files.isDirectory(ancestor)) {
+				ancestor = ancestor.getParent();
+			}
+			if (ancestor != null) {
+				register(ancestor);
+			}
+			return;
+		}
+		this.pendingDirectories.remove(path);
+		register(path);
+	}
+
+	/**
+	 * Register the given directory with the WatchService, starting the
+	 * watch thread on first use.
+	 */
+	private void register(Path path) {
+		if (this.watchedDirectories.contains(path)) {
+			return;
+		}
+		// Registering does I/O: use a j.u.c. lock rather than a monitor, so that
+		// virtual threads loading bundles don't pin their carrier meanwhile.
+		this.watchLock.lock();
+		try {
+			if (this.closed || !this.watchedDirectories.add(path)) {
+				return;
+			}
+			try {
+				if (this.watchService == null) {
+					this.watchService = FileSystems.getDefault().newWatchService();
+					this.watchThread = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							processEvents();
+						}
+					}, "i18n-file-watcher");
+					this.watchThread.setDaemon(true);
+					this.watchThread.start();
+				}
+				path.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+			}
+			catch (IOException ex) {
+				this.watchedDirectories.remove(path);
+				if (logger.isWarnEnabled()) {
+					logger.warn("Could not watch directory [" + path + "] for changes", ex);
+				}
+			}
+		}
+		finally {
+			this.watchLock.unlock();
+		}
+	}
+
+	/**
+	 * Watch the pending directories below the given created directory, and
+	 * collect the bundle files looked up so far that may have been written
+	 * into it before it was watched.
+	 */
+	private void onDirectoryCreated(Path created, Set<String> changed) {
+		for (Path pending : this.pendingDirectories) {
+			if (pending.startsWith(created)) {
+				watch(pending.toFile());
+			}
+		}
+		collectCachedFilenames(created, changed);
+	}
+
+	/**
+	 * Watch for the given deleted directory to get created again, and
+	 * collect the bundle files looked up so far that were in it.
+	 */
+	private void onDirectoryDeleted(Path deleted, Set<String> changed) {
+		this.watchedDirectories.remove(deleted);
+		watch(deleted.toFile());
+		if (Files.isDirectory(deleted)) {
+			// created again before its ancestor got watched
+			onDirectoryCreated(deleted, changed);
+		}
+		else {
+			collectCachedFilenames(deleted, changed);
+		}
+	}
+
+	/**
+	 * Collect the bundle files looked up so far that are located below the
+	 * given directory.
+	 */
+	private void collectCachedFilenames(Path directoryPath, Set<String> changed) {
+		for (String filename : getCachedProperties().keySet()) {
+			for (File directory : this.directories) {
+				Path path = new File(directory, filename + PROPERTIES_SUFFIX).toPath().toAbsolutePath().normalize();
+				if (path.startsWith(directoryPath)) {
+					changed.add(filename);
+				}
+			}
+		}
+	}
+
+	private void processEvents() {
+		try {
+			while (!this.closed) {
+				WatchKey key = this.watchService.take();
+				// Let the writer finish, then collect everything that changed meanwhile.
+				Thread.sleep(this.reloadDelayMillis);
+				Set<String> changed = new HashSet<String>();
+				boolean overflow = false;
+				while (key != null) {
+					Path directory = (Path) key.watchable();
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+							overflow = true;
+						}
+						else {
+							Path path = directory.resolve((Path) event.context());
+							if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+								onDirectoryCreated(path.toAbsolutePath().normalize(), changed);
+							}
+							String filename = toFilename(path);
+							if (filename != null) {
+								changed.add(filename);
+							}
+						}
+					}
+					if (!key.reset()) {
+						// no longer watchable, e.g. the directory got deleted
+						onDirectoryDeleted(directory.toAbsolutePath().normalize(), changed);
+					}
+					key = this.watchService.poll();
+				}
+				if (overflow) {
+					changed.addAll(getCachedProperties().keySet());
+				}
+				for (String filename : changed) {
+					try {
+						reload(filename);
+					}
+					catch (RuntimeException ex) {
+						logger.warn("Could not reload properties [" + filename + "]", ex);
+					}
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		catch (ClosedWatchServiceException ex) {
+			// closed - stop watching
+		}
+	}
+
+	/**
+	 * Return the bundle filename for the given changed file, or {@code null}
+	 * if it isn't a bundle file that has been looked up before.
+	 */
+	private String toFilename(Path path) {
+		String name = path.getFileName().toString();
+		if (!name.endsWith(PROPERTIES_SUFFIX)) {
+			return null;
+		}
+		for (File directory : this.directories) {
+			Path base = directory.toPath().toAbsolutePath().normalize();
+			if (path.startsWith(base)) {
+				String relative = base.relativize(path).toString().replace(File.separatorChar, '/');
+				String filename = relative.substring(0, relative.length() - PROPERTIES_SUFFIX.length());
+				if (getCachedProperties().containsKey(filename)) {
+					return filename;
+				}
+			}
+		}
+		return null;
+	}
+
+	private void reload(String filename) {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Reloading properties [" + filename + "] after change");
+		}
+		PropertiesHolder current = getCachedProperties().get(filename);
+		PropertiesHolder propHolder;
+		if (findFile(filename + PROPERTIES_SUFFIX) == null) {
+			if (current != null && !current.hasProperties()) {
+				// still missing
+				return;
+			}
+			// deleted from all directories
+			propHolder = new PropertiesHolder();
+		}
+		else {
+			propHolder = loadResourceProperties(filename, current);
+		}
+		if (propHolder != null && propHolder != current) {
+			updateProperties(filename, propHolder);
+		}
+	}
+
+	/**
+	 * Stop watching the directories. Bundle files already loaded stay cached.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.watchLock.lock();
+		try {
+			this.closed = true;
+			if (this.watchService != null) {
+				this.watchService.close();
+				this.watchThread.interrupt();
+			}
+		}
+		finally {
+			this.watchLock.unlock();
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package org.vsg.common.i18n;
+
+import java.util.Locale;
+
+/**
+ * Strategy for resolving the Locale of the current request, used by the
+ * Locale-less methods of {@link I18nMesssageSupport}. Lets one message
+ * source, and one set of caches, serve concurrent requests in different
+ * languages.
+ * @author vison ruan
+ * @see ThreadLocalLocaleContext
+ * @see ScopedLocaleContext
+ * @see ReLoaderI18nMessageSource#setLocaleContext
+ */
+public interface LocaleContext {
+
+	/**
+	 * Return the Locale of the current thread or scope.
+	 * @return the current Locale, or {@code null} if none is set
+	 */
+	Locale getLocale();
+
+}
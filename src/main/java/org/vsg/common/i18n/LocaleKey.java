@@ -0,0 +1,39 @@
+package org.vsg.common.i18n;
+
+import java.util.Locale;
+
+/**
+ * Pre-resolved handle for a Locale, obtained once through
+ * {@link ReLoaderI18nMessageSource#localeKey(Locale)}. Together with a
+ * {@link MessageKey} it addresses one cell of the resolved message table.
+ * @author vison ruan
+ *
+ */
+public final class LocaleKey {
+
+	private final Locale locale;
+
+	private final int id;
+
+
+	LocaleKey(Locale locale, int id) {
+		this.locale = locale;
+		this.id = id;
+	}
+
+	/**
+	 * Return the Locale this key stands for.
+	 */
+	public Locale getLocale() {
+		return this.locale;
+	}
+
+	int getId() {
+		return this.id;
+	}
+
+	@Override
+	public String toString() {
+		return "LocaleKey [" + this.locale + "]";
+	}
+}
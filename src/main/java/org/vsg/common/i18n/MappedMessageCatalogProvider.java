@@ -0,0 +1,213 @@
+/**
+ *
+ */
+package org.vsg.common.i18n;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Message source serving messages straight from a binary catalog written
+ * by {@link MessageCatalogWriter}, mapped into memory via
+ * {@link FileChannel#map}.
+ * <p>Message texts stay in the mapped file rather than on the heap, and
+ * JVMs on the same host mapping the same catalog share its pages through
+ * the page cache. Lookups binary-search the sorted key index of the
+ * Locale's section and decode only the value found.
+ * <p>A Locale without a section of its own falls back to its language,
+ * then to the default Locale, then to the {@link Locale#ROOT} section.
+ * @author vison ruan
+ *
+ */
+public class MappedMessageCatalogProvider extends AbstractMessageSource {
+
+	private final ByteBuffer buffer;
+
+	private final Map<Locale, Section> sections = new HashMap<Locale, Section>();
+
+	private final ConcurrentMap<Locale, Section> cachedSections = new ConcurrentHashMap<Locale, Section>();
+
+	/** Default Locale the current message generation applies to */
+	private volatile Locale generationDefaultLocale = Locale.getDefault();
+
+	private final AtomicLong messageGeneration = new AtomicLong();
+
+
+	/**
+	 * Map the given catalog file.
+	 * @param catalogFile the catalog written by {@link MessageCatalogWriter}
+	 * @throws IOException if the file can't be read or isn't a catalog
+	 */
+	public MappedMessageCatalogProvider(File catalogFile) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(catalogFile, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			this.buffer = mapped;
+		}
+		finally {
+			// the mapping stays valid after the channel is closed
+			raf.close();
+		}
+		if (this.buffer.capacity() < 12 || this.buffer.getInt(0) != MessageCatalogWriter.MAGIC) {
+			throw new IOException("Not a message catalog: " + catalogFile);
+		}
+		if (this.buffer.getInt(4) != MessageCatalogWriter.VERSION) {
+			throw new IOException("Unsupported message catalog version " + this.buffer.getInt(4) + ": " + catalogFile);
+		}
+		int localeCount = this.buffer.getInt(8);
+		int position = 12;
+		for (int i = 0; i < localeCount; i++) {
+			int tagLength = this.buffer.getShort(position) & 0xFFFF;
+			String tag = decode(position + 2, tagLength);
+			position += 2 + tagLength;
+			this.sections.put(Locale.forLanguageTag(tag), new Section(this.buffer.getInt(position)));
+			position += 4;
+		}
+	}
+
+
+	@Override
+	protected String resolveCodeWithoutArguments(String code, Locale locale) {
+		Section section = getSection(locale);
+		if (section == null) {
+			return null;
+		}
+		return section.find(code.getBytes(MessageCatalogWriter.UTF_8));
+	}
+
+	@Override
+	protected MessageFormat resolveCode(String code, Locale locale) {
+		Section section = getSection(locale);
+		if (section == null) {
+			return null;
+		}
+		MessageFormat messageFormat = section.messageFormats.get(code);
+		if (messageFormat == null) {
+			String msg = section.find(code.getBytes(MessageCatalogWriter.UTF_8));
+			if (msg == null) {
+				return null;
+			}
+			messageFormat = createMessageFormat(msg, locale);
+			MessageFormat existing = section.messageFormats.putIfAbsent(code, messageFormat);
+			if (existing != null) {
+				messageFormat = existing;
+			}
+		}
+		return messageFormat;
+	}
+
+	/**
+	 * The mapped catalog never changes, so only the parent and common
+	 * messages affect the resolution stamp.
+	 */
+	@Override
+	protected long getResolutionStamp() {
+		return getChainResolutionStamp(0);
+	}
+
+	/**
+	 * The mapped catalog never changes, but Locales without a section of
+	 * their own resolve against the section of the default Locale.
+	 */
+	@Override
+	protected long getMessageGeneration() {
+		Locale defaultLocale = Locale.getDefault();
+		if (!defaultLocale.equals(this.generationDefaultLocale)) {
+			this.generationDefaultLocale = defaultLocale;
+			return this.messageGeneration.incrementAndGet();
+		}
+		return this.messageGeneration.get();
+	}
+
+	private Section getSection(Locale locale) {
+		Section section = this.cachedSections.get(locale);
+		if (section != null) {
+			return section;
+		}
+		section = this.sections.get(locale);
+		if (section == null && (locale.getCountry().length() > 0 || locale.getVariant().length() > 0)) {
+			section = this.sections.get(new Locale(locale.getLanguage()));
+		}
+		if (section != null) {
+			this.cachedSections.putIfAbsent(locale, section);
+			return section;
+		}
+		// Not cached: the default Locale may change meanwhile.
+		section = this.sections.get(Locale.getDefault());
+		return (section != null ? section : this.sections.get(Locale.ROOT));
+	}
+
+	private String decode(int offset, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = this.buffer.get(offset + i);
+		}
+		return new String(bytes, MessageCatalogWriter.UTF_8);
+	}
+
+
+	/**
+	 * One Locale's sorted key index within the mapped buffer.
+	 */
+	private final class Section {
+
+		private final int offset;
+
+		private final int count;
+
+		/** Compiled formats of messages used with arguments */
+		final ConcurrentMap<String, MessageFormat> messageFormats = new ConcurrentHashMap<String, MessageFormat>();
+
+		Section(int offset) {
+			this.offset = offset;
+			this.count = buffer.getInt(offset);
+		}
+
+		/**
+		 * Binary-search the given UTF-8 encoded key.
+		 * @return the decoded value, or {@code null} if not found
+		 */
+		String find(byte[] key) {
+			int low = 0;
+			int high = this.count - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int entry = this.offset + 4 + mid * MessageCatalogWriter.ENTRY_SIZE;
+				int cmp = compareKey(this.offset + buffer.getInt(entry), buffer.getInt(entry + 4), key);
+				if (cmp < 0) {
+					low = mid + 1;
+				}
+				else if (cmp > 0) {
+					high = mid - 1;
+				}
+				else {
+					return decode(this.offset + buffer.getInt(entry + 8), buffer.getInt(entry + 12));
+				}
+			}
+			return null;
+		}
+
+		private int compareKey(int keyOffset, int keyLength, byte[] key) {
+			int length = Math.min(keyLength, key.length);
+			for (int i = 0; i < length; i++) {
+				int diff = (buffer.get(keyOffset + i) & 0xFF) - (key[i] & 0xFF);
+				if (diff != 0) {
+					return diff;
+				}
+			}
+			return keyLength - key.length;
+		}
+	}
+}
@@ -0,0 +1,384 @@
+/**
+ *
+ */
+package org.vsg.common.i18n;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Read-only {@code Properties} view over the layers a message source
+ * resolves codes from, e.g. the merged bundles of a Locale, the common
+ * messages and the parent's messages, in lookup order.
+ * <p>Nothing is copied: lookups check the layers in turn, and iteration
+ * walks the layers lazily, skipping codes shadowed by an earlier layer.
+ * The view keeps the holders current at creation time; bundle files
+ * reloaded afterwards show up in views created afterwards.
+ * <p>All mutators throw {@link UnsupportedOperationException}.
+ * @author vison ruan
+ *
+ */
+@SuppressWarnings("serial")
+final class MergedMessagesView extends Properties {
+
+	private final PropertiesHolder[] layers;
+
+	/** Number of visible messages, counted on first use; the layers don't change */
+	private transient volatile int size = -1;
+
+
+	MergedMessagesView(PropertiesHolder[] layers) {
+		this.layers = layers;
+	}
+
+	/**
+	 * Return an iterator over the visible messages, layer by layer.
+	 */
+	Iterator<Map.Entry<String, String>> entryIterator() {
+		return new EntryIterator();
+	}
+
+	@Override
+	public String getProperty(String key) {
+		for (PropertiesHolder layer : this.layers) {
+			String value = layer.getProperty(key);
+			if (value != null) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String getProperty(String key, String defaultValue) {
+		String value = getProperty(key);
+		return (value != null ? value : defaultValue);
+	}
+
+	@Override
+	public Object get(Object key) {
+		return (key instanceof String ? getProperty((String) key) : null);
+	}
+
+	@Override
+	public Object getOrDefault(Object key, Object defaultValue) {
+		Object value = get(key);
+		return (value != null ? value : defaultValue);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return (get(key) != null);
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		for (Iterator<Map.Entry<String, String>> it = entryIterator(); it.hasNext();) {
+			if (it.next().getValue().equals(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean contains(Object value) {
+		return containsValue(value);
+	}
+
+	@Override
+	public int size() {
+		int size = this.size;
+		if (size < 0) {
+			size = 0;
+			for (Iterator<Map.Entry<String, String>> it = entryIterator(); it.hasNext(); it.next()) {
+				size++;
+			}
+			this.size = size;
+		}
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return !entryIterator().hasNext();
+	}
+
+	@Override
+	public Set<Object> keySet() {
+		return Collections.<Object> unmodifiableSet(stringPropertyNames());
+	}
+
+	@Override
+	public Set<String> stringPropertyNames() {
+		return new AbstractSet<String>() {
+			@Override
+			public Iterator<String> iterator() {
+				final Iterator<Map.Entry<String, String>> entries = entryIterator();
+				return new Iterator<String>() {
+					@Override
+					public boolean hasNext() {
+						return entries.hasNext();
+					}
+					@Override
+					public String next() {
+						return entries.next().getKey();
+					}
+				};
+			}
+			@Override
+			public boolean contains(Object key) {
+				return containsKey(key);
+			}
+			@Override
+			public int size() {
+				return MergedMessagesView.this.size();
+			}
+		};
+	}
+
+	@Override
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public Set<Map.Entry<Object, Object>> entrySet() {
+		return new AbstractSet() {
+			@Override
+			public Iterator iterator() {
+				return entryIterator();
+			}
+			@Override
+			public int size() {
+				return MergedMessagesView.this.size();
+			}
+		};
+	}
+
+	@Override
+	public Collection<Object> values() {
+		return new AbstractCollection<Object>() {
+			@Override
+			public Iterator<Object> iterator() {
+				final Iterator<Map.Entry<String, String>> entries = entryIterator();
+				return new Iterator<Object>() {
+					@Override
+					public boolean hasNext() {
+						return entries.hasNext();
+					}
+					@Override
+					public Object next() {
+						return entries.next().getValue();
+					}
+				};
+			}
+			@Override
+			public int size() {
+				return MergedMessagesView.this.size();
+			}
+		};
+	}
+
+	@Override
+	public Enumeration<Object> keys() {
+		return Collections.enumeration(keySet());
+	}
+
+	@Override
+	public Enumeration<?> propertyNames() {
+		return keys();
+	}
+
+	@Override
+	public Enumeration<Object> elements() {
+		return Collections.enumeration(values());
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super Object, ? super Object> action) {
+		for (Iterator<Map.Entry<String, String>> it = entryIterator(); it.hasNext();) {
+			Map.Entry<String, String> entry = it.next();
+			action.accept(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public synchronized Object clone() {
+		Properties copy = new Properties();
+		for (Iterator<Map.Entry<String, String>> it = entryIterator(); it.hasNext();) {
+			Map.Entry<String, String> entry = it.next();
+			copy.put(entry.getKey(), entry.getValue());
+		}
+		return copy;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other == this) {
+			return true;
+		}
+		if (!(other instanceof Map)) {
+			return false;
+		}
+		Map<?, ?> map = (Map<?, ?>) other;
+		int size = 0;
+		for (Iterator<Map.Entry<String, String>> it = entryIterator(); it.hasNext();) {
+			Map.Entry<String, String> entry = it.next();
+			if (!entry.getValue().equals(map.get(entry.getKey()))) {
+				return false;
+			}
+			size++;
+		}
+		return size == map.size();
+	}
+
+	@Override
+	public int hashCode() {
+		int hashCode = 0;
+		for (Iterator<Map.Entry<String, String>> it = entryIterator(); it.hasNext();) {
+			hashCode += it.next().hashCode();
+		}
+		return hashCode;
+	}
+
+	@Override
+	public String toString() {
+		return clone().toString();
+	}
+
+	/**
+	 * Serialize as a plain {@code Properties} copy of the visible messages:
+	 * the layers aren't serializable, and the inherited table is empty.
+	 */
+	private Object writeReplace() {
+		return clone();
+	}
+
+
+	@Override
+	public Object setProperty(String key, String value) {
+		throw new UnsupportedOperationException("Message view is read-only");
+	}
+
+	@Override
+	public Object put(Object key, Object value) {
+		throw new UnsupportedOperationException("Message view is read-only");
+	}
+
+	@Override
+	public void putAll(Map<?, ?> t) {
+		throw new UnsupportedOperationException("Message view is read-only");
+	}
+
+	@Override
+	public Object putIfAbsent(Object key, Object value) {
+		throw new UnsupportedOperationException("Message view is read-only");
+	}
+
+	@Override
+	public Object remove(Object key) {
+		throw new UnsupportedOperationException("Message view is read-only");
+	}
+
+	@Override
+	public boolean remove(Object key, Object value) {
+		throw new UnsupportedOperationException("Message view is read-only");
+	}
+
+	@Override
+	public Object replace(Object key, Object value) {
+		throw new UnsupportedOperationException("Message view is read-only");
+	}
+
+	@Override
+	public boolean replace(Object key, Object oldValue, Object newValue) {
+		throw new UnsupportedOperationException("Message view is read-only");
+	}
+
+	@Override
+	public void replaceAll(BiFunction<? super Object, ? super Object, ?> function) {
+		throw new UnsupportedOperationException("Message view is read-only");
+	}
+
+	@Override
+	public Object compute(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+		throw new UnsupportedOperationException("Message view is read-only");
+	}
+
+	@Override
+	public Object computeIfAbsent(Object key, Function<? super Object, ?> mappingFunction) {
+		throw new UnsupportedOperationException("Message view is read-only");
+	}
+
+	@Override
+	public Object computeIfPresent(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+		throw new UnsupportedOperationException("Message view is read-only");
+	}
+
+	@Override
+	public Object merge(Object key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+		throw new UnsupportedOperationException("Message view is read-only");
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("Message view is read-only");
+	}
+
+
+	/**
+	 * Walks the entries of each layer, skipping codes of earlier layers.
+	 */
+	private final class EntryIterator implements Iterator<Map.Entry<String, String>> {
+
+		private int layer = -1;
+
+		private Iterator<Map.Entry<String, String>> current = Collections.<Map.Entry<String, String>> emptyIterator();
+
+		private Map.Entry<String, String> next;
+
+		@Override
+		public boolean hasNext() {
+			while (this.next == null) {
+				while (!this.current.hasNext()) {
+					if (++this.layer >= layers.length) {
+						return false;
+					}
+					this.current = layers[this.layer].entryIterator();
+				}
+				Map.Entry<String, String> entry = this.current.next();
+				if (!isShadowed(entry.getKey())) {
+					this.next = entry;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public Map.Entry<String, String> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<String, String> entry = this.next;
+			this.next = null;
+			return entry;
+		}
+
+		private boolean isShadowed(String code) {
+			for (int i = 0; i < this.layer; i++) {
+				if (layers[i].getProperty(code) != null) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
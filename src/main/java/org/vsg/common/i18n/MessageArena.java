@@ -0,0 +1,232 @@
+/**
+ *
+ */
+package org.vsg.common.i18n;
+
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable message codes and texts of one bundle, packed as UTF-8 into a
+ * single byte array with an int index, instead of a {@code Properties}
+ * entry plus two {@code String}s per message.
+ * <p>The index holds four ints per entry (code hash, code offset, text
+ * offset, text length), sorted by hash; lookups binary-search the hash and
+ * compare the code bytes in place. Texts are decoded on access; the most
+ * recently decoded text of each slot of a small direct-mapped cache is
+ * kept, so hot messages are decoded once.
+ * @author vison ruan
+ *
+ */
+final class MessageArena {
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int STRIDE = 4;
+
+	private static final int MAX_CACHED_VALUES = 1024;
+
+	private final byte[] data;
+
+	private final int[] index;
+
+	private final DecodedValue[] decodedValues;
+
+
+	private MessageArena(byte[] data, int[] index) {
+		this.data = data;
+		this.index = index;
+		int size = index.length / STRIDE;
+		int cacheSize = 1;
+		while (cacheSize < size / 4 && cacheSize < MAX_CACHED_VALUES) {
+			cacheSize <<= 1;
+		}
+		this.decodedValues = new DecodedValue[cacheSize];
+	}
+
+	/**
+	 * Pack the String entries of the given map; other entries are ignored.
+	 */
+	static MessageArena build(Map<?, ?> messages) {
+		String[] codes = new String[messages.size()];
+		String[] texts = new String[messages.size()];
+		int size = 0;
+		for (Map.Entry<?, ?> entry : messages.entrySet()) {
+			if (entry.getKey() instanceof String && entry.getValue() instanceof String) {
+				codes[size] = (String) entry.getKey();
+				texts[size] = (String) entry.getValue();
+				size++;
+			}
+		}
+		// sort entry numbers by signed code hash
+		long[] order = new long[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = ((long) codes[i].hashCode() << 32) | i;
+		}
+		Arrays.sort(order);
+
+		byte[][] encoded = new byte[size * 2][];
+		int length = 0;
+		for (int i = 0; i < size; i++) {
+			int entry = (int) order[i];
+			encoded[2 * i] = codes[entry].getBytes(UTF_8);
+			encoded[2 * i + 1] = texts[entry].getBytes(UTF_8);
+			length += encoded[2 * i].length + encoded[2 * i + 1].length;
+		}
+		byte[] data = new byte[length];
+		int[] index = new int[size * STRIDE];
+		int offset = 0;
+		for (int i = 0; i < size; i++) {
+			byte[] code = encoded[2 * i];
+			byte[] text = encoded[2 * i + 1];
+			index[i * STRIDE] = (int) (order[i] >> 32);
+			index[i * STRIDE + 1] = offset;
+			System.arraycopy(code, 0, data, offset, code.length);
+			offset += code.length;
+			index[i * STRIDE + 2] = offset;
+			index[i * STRIDE + 3] = text.length;
+			System.arraycopy(text, 0, data, offset, text.length);
+			offset += text.length;
+		}
+		return new MessageArena(data, index);
+	}
+
+	/**
+	 * Return the number of messages.
+	 */
+	int size() {
+		return this.index.length / STRIDE;
+	}
+
+	/**
+	 * Return the text for the given code, or {@code null} if none.
+	 */
+	String get(String code) {
+		int hash = code.hashCode();
+		int low = 0;
+		int high = size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midHash = this.index[mid * STRIDE];
+			if (midHash < hash) {
+				low = mid + 1;
+			}
+			else if (midHash > hash) {
+				high = mid - 1;
+			}
+			else {
+				for (int i = mid; i >= 0 && this.index[i * STRIDE] == hash; i--) {
+					if (codeEquals(i, code)) {
+						return getText(i);
+					}
+				}
+				for (int i = mid + 1; i < size() && this.index[i * STRIDE] == hash; i++) {
+					if (codeEquals(i, code)) {
+						return getText(i);
+					}
+				}
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Decode all codes into a new Set.
+	 */
+	Set<String> codes() {
+		Set<String> codes = new HashSet<String>(size() * 4 / 3 + 1);
+		for (int i = 0; i < size(); i++) {
+			codes.add(getCode(i));
+		}
+		return codes;
+	}
+
+	/**
+	 * Decode all entries into the given map.
+	 */
+	void copyTo(Map<? super String, ? super String> target) {
+		for (int i = 0; i < size(); i++) {
+			target.put(getCode(i), getText(i));
+		}
+	}
+
+	/**
+	 * Iterate over all entries, decoding them one at a time.
+	 */
+	Iterator<Map.Entry<String, String>> entryIterator() {
+		return new Iterator<Map.Entry<String, String>>() {
+			private int entry = 0;
+			@Override
+			public boolean hasNext() {
+				return this.entry < size();
+			}
+			@Override
+			public Map.Entry<String, String> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int current = this.entry++;
+				return new AbstractMap.SimpleImmutableEntry<String, String>(getCode(current), getText(current));
+			}
+		};
+	}
+
+	private String getCode(int entry) {
+		int offset = this.index[entry * STRIDE + 1];
+		return new String(this.data, offset, this.index[entry * STRIDE + 2] - offset, UTF_8);
+	}
+
+	private String getText(int entry) {
+		int slot = entry & (this.decodedValues.length - 1);
+		DecodedValue decoded = this.decodedValues[slot];
+		if (decoded != null && decoded.entry == entry) {
+			return decoded.text;
+		}
+		String text = new String(this.data, this.index[entry * STRIDE + 2], this.index[entry * STRIDE + 3], UTF_8);
+		// racy but safe: DecodedValue is immutable, a lost update only costs another decode
+		this.decodedValues[slot] = new DecodedValue(entry, text);
+		return text;
+	}
+
+	/**
+	 * Compare the stored code bytes with the given code, without decoding
+	 * as long as both are ASCII.
+	 */
+	private boolean codeEquals(int entry, String code) {
+		int offset = this.index[entry * STRIDE + 1];
+		int length = this.index[entry * STRIDE + 2] - offset;
+		if (length < code.length()) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			byte b = this.data[offset + i];
+			if (b < 0) {
+				return getCode(entry).equals(code);
+			}
+			if (i >= code.length() || b != code.charAt(i)) {
+				return false;
+			}
+		}
+		return length == code.length();
+	}
+
+
+	private static final class DecodedValue {
+
+		final int entry;
+
+		final String text;
+
+		DecodedValue(int entry, String text) {
+			this.entry = entry;
+			this.text = text;
+		}
+	}
+}
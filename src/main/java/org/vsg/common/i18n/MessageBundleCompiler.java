@@ -0,0 +1,199 @@
+/**
+ *
+ */
+package org.vsg.common.i18n;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates Java sources of {@link CompiledMessageBundle} classes from the
+ * bundle files of a {@link ReLoaderI18nMessageSource}, for use by
+ * {@link CompiledBundleMessageSource} without any resource loading or
+ * parsing at runtime.
+ * <p>For a class name "com.example.Messages", one class is generated for
+ * the default files ("com.example.Messages") and one per Locale (e.g.
+ * "com.example.Messages_zh_CN"), each holding the messages of the files
+ * for exactly that Locale across all basenames. Fallbacks, including the
+ * one to the system Locale, are resolved by the runtime source, so that
+ * the build machine's Locale never gets baked into the classes.
+ * <p>Messages are split into nested part classes, keeping each class
+ * well below the JVM limits for method size and constant pool entries.
+ * @author vison ruan
+ *
+ */
+public class MessageBundleCompiler {
+
+	private static final int ENTRIES_PER_PART = 1000;
+
+	private final ReLoaderI18nMessageSource source;
+
+
+	/**
+	 * Create a new compiler for the bundles of the given source.
+	 */
+	public MessageBundleCompiler(ReLoaderI18nMessageSource source) {
+		this.source = source;
+	}
+
+	/**
+	 * Generate the bundle classes for the default files, the given Locales
+	 * and the Locales they fall back to, e.g. "zh" for "zh_CN".
+	 * <p>Classes are only generated for these Locales: to fall back to the
+	 * system Locale at runtime, include it in the given Locales.
+	 * @param className the fully qualified name of the default bundle class
+	 * @param locales the Locales to generate classes for
+	 * @param outputDirectory the source root to write the classes to
+	 * @return the generated source files
+	 * @throws IOException in case of I/O errors
+	 */
+	public List<File> compile(String className, Collection<Locale> locales, File outputDirectory) throws IOException {
+		Set<Locale> allLocales = new LinkedHashSet<Locale>();
+		allLocales.add(Locale.ROOT);
+		for (Locale locale : locales) {
+			allLocales.addAll(CompiledBundleMessageSource.getCandidateLocales(locale));
+		}
+		List<File> files = new ArrayList<File>(allLocales.size());
+		for (Locale locale : allLocales) {
+			String bundleClassName = CompiledBundleMessageSource.getBundleClassName(className, locale);
+			Map<String, String> messages = new HashMap<String, String>();
+			Map<String, Integer> basenames = new HashMap<String, Integer>();
+			collectMessages(locale, messages, basenames);
+			files.add(writeClass(bundleClassName, messages, basenames, outputDirectory));
+		}
+		return files;
+	}
+
+	/**
+	 * Collect the messages of the files for exactly the given Locale, each
+	 * with the position of the first basename defining it.
+	 */
+	private void collectMessages(Locale locale, Map<String, String> messages, Map<String, Integer> basenames) {
+		String[] sourceBasenames = this.source.getBasenames();
+		for (int i = 0; i < sourceBasenames.length; i++) {
+			String filename = sourceBasenames[i];
+			if (!locale.equals(Locale.ROOT)) {
+				filename = this.source.calculateFilenamesForLocale(sourceBasenames[i], locale).get(0);
+			}
+			PropertiesHolder propHolder = this.source.getProperties(filename);
+			for (String code : propHolder.getCodes()) {
+				if (!messages.containsKey(code)) {
+					messages.put(code, propHolder.getProperty(code));
+					basenames.put(code, i);
+				}
+			}
+		}
+	}
+
+	private File writeClass(String className, Map<String, String> messages, Map<String, Integer> basenames,
+			File outputDirectory) throws IOException {
+		int dot = className.lastIndexOf('.');
+		String packageName = (dot > 0 ? className.substring(0, dot) : null);
+		String simpleName = className.substring(dot + 1);
+		List<String> codes = new ArrayList<String>(messages.keySet());
+		Collections.sort(codes);
+		int parts = (codes.size() + ENTRIES_PER_PART - 1) / ENTRIES_PER_PART;
+
+		StringBuilder java = new StringBuilder();
+		java.append("// Generated by ").append(MessageBundleCompiler.class.getName()).append(" - do not edit.\n");
+		if (packageName != null) {
+			java.append("package ").append(packageName).append(";\n");
+		}
+		java.append('\n');
+		java.append("public final class ").append(simpleName)
+				.append(" extends ").append(CompiledMessageBundle.class.getName()).append(" {\n\n");
+		java.append("\tprivate static final String[] CODES = new String[").append(codes.size()).append("];\n\n");
+		java.append("\tprivate static final String[] MESSAGES = new String[").append(codes.size()).append("];\n\n");
+		java.append("\tprivate static final int[] BASENAMES = new int[").append(codes.size()).append("];\n\n");
+		java.append("\tstatic {\n");
+		for (int part = 0; part < parts; part++) {
+			java.append("\t\tPart").append(part).append(".fill();\n");
+		}
+		java.append("\t}\n\n");
+		java.append("\tpublic ").append(simpleName).append("() {\n");
+		java.append("\t\tsuper(CODES, MESSAGES, BASENAMES);\n");
+		java.append("\t}\n");
+		for (int part = 0; part < parts; part++) {
+			java.append("\n\tprivate static final class Part").append(part).append(" {\n");
+			java.append("\t\tstatic void fill() {\n");
+			int end = Math.min(codes.size(), (part + 1) * ENTRIES_PER_PART);
+			for (int i = part * ENTRIES_PER_PART; i < end; i++) {
+				String code = codes.get(i);
+				java.append("\t\t\tCODES[").append(i).append("] = ");
+				appendLiteral(java, code);
+				java.append(";\n\t\t\tMESSAGES[").append(i).append("] = ");
+				appendLiteral(java, messages.get(code));
+				java.append(";\n\t\t\tBASENAMES[").append(i).append("] = ").append(basenames.get(code));
+				java.append(";\n");
+			}
+			java.append("\t\t}\n\t}\n");
+		}
+		java.append("}\n");
+
+		File directory = (packageName != null ?
+				new File(outputDirectory, packageName.replace('.', File.separatorChar)) : outputDirectory);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create directory [" + directory + "]");
+		}
+		File file = new File(directory, simpleName + ".java");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(java.toString());
+		}
+		finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Append the given text as an ASCII-only Java string literal.
+	 */
+	private static void appendLiteral(StringBuilder java, String text) {
+		java.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char ch = text.charAt(i);
+			switch (ch) {
+				case '"':
+					java.append("\\\"");
+					break;
+				case '\\':
+					java.append("\\\\");
+					break;
+				case '\n':
+					java.append("\\n");
+					break;
+				case '\r':
+					java.append("\\r");
+					break;
+				case '\t':
+					java.append("\\t");
+					break;
+				default:
+					if (ch < 0x20) {
+						// octal, since unicode escapes of line terminators would break the literal
+						java.append('\\').append(Integer.toOctalString(0x200 | ch).substring(1));
+					}
+					else if (ch > 0x7E) {
+						java.append("\\u").append(Integer.toHexString(0x10000 | ch).substring(1));
+					}
+					else {
+						java.append(ch);
+					}
+			}
+		}
+		java.append('"');
+	}
+}
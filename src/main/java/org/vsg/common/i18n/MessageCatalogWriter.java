@@ -0,0 +1,186 @@
+/**
+ *
+ */
+package org.vsg.common.i18n;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Writes the binary message catalog read by {@link MappedMessageCatalogProvider}.
+ * <p>Layout (big-endian):
+ * <pre>
+ * int   magic ("I18C")
+ * int   version
+ * int   locale count
+ * per locale: short tag length, tag (UTF-8 language tag), int section offset
+ * per section: int entry count,
+ *              per entry: int key offset, int key length, int value offset, int value length
+ *              (offsets relative to the section start, entries sorted by UTF-8 key bytes),
+ *              followed by the UTF-8 key and value bytes
+ * </pre>
+ * Each section holds the merged, fallback-resolved messages of one Locale.
+ * @author vison ruan
+ *
+ */
+public class MessageCatalogWriter {
+
+	static final int MAGIC = 0x49313843;
+
+	static final int VERSION = 1;
+
+	static final int ENTRY_SIZE = 16;
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * Write the merged messages of the given source for the given Locales.
+	 * A section for {@link Locale#ROOT} is always included, serving as the
+	 * last fallback for Locales not in the catalog.
+	 * <p>The source must not fall back to the system Locale, since that
+	 * would bake the Locale of the writing machine into the catalog.
+	 * @param source the source to read the merged bundles from
+	 * @param locales the Locales to include
+	 * @param file the catalog file to write
+	 * @throws IOException in case of I/O errors
+	 * @throws IllegalArgumentException if the source falls back to the system Locale
+	 * @see ReLoaderI18nMessageSource#setFallbackToSystemLocale
+	 */
+	public static void write(ReLoaderI18nMessageSource source, Collection<Locale> locales, File file) throws IOException {
+		if (source.isFallbackToSystemLocale()) {
+			throw new IllegalArgumentException(
+					"Message source must not fall back to the system Locale when writing a catalog");
+		}
+		Map<Locale, Properties> messages = new LinkedHashMap<Locale, Properties>();
+		for (Locale locale : locales) {
+			messages.put(locale, source.getMergedProperties(locale).getProperties());
+		}
+		if (!messages.containsKey(Locale.ROOT)) {
+			messages.put(Locale.ROOT, source.getMergedProperties(Locale.ROOT).getProperties());
+		}
+		write(messages, file);
+	}
+
+	/**
+	 * Write the given messages per Locale.
+	 * <p>The catalog is written to a temporary file next to the given file,
+	 * then moved into place atomically, so that a provider mapping the file
+	 * meanwhile never sees a partially written catalog; providers that
+	 * mapped the previous catalog keep reading it.
+	 * @param messages the messages, keyed by Locale
+	 * @param file the catalog file to write
+	 * @throws IOException in case of I/O errors
+	 */
+	public static void write(Map<Locale, Properties> messages, File file) throws IOException {
+		List<byte[]> tags = new ArrayList<byte[]>(messages.size());
+		List<byte[]> sections = new ArrayList<byte[]>(messages.size());
+		int headerSize = 12;
+		for (Map.Entry<Locale, Properties> entry : messages.entrySet()) {
+			byte[] tag = entry.getKey().toLanguageTag().getBytes(UTF_8);
+			tags.add(tag);
+			sections.add(writeSection(entry.getValue()));
+			headerSize += 2 + tag.length + 4;
+		}
+
+		File directory = file.getAbsoluteFile().getParentFile();
+		File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+		boolean written = false;
+		try {
+			writeCatalog(tags, sections, headerSize, tempFile);
+			Files.move(tempFile.toPath(), file.toPath(),
+					StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			written = true;
+		}
+		finally {
+			if (!written) {
+				tempFile.delete();
+			}
+		}
+	}
+
+	private static void writeCatalog(List<byte[]> tags, List<byte[]> sections, int headerSize, File file)
+			throws IOException {
+		OutputStream os = new FileOutputStream(file);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(tags.size());
+			int sectionOffset = headerSize;
+			for (int i = 0; i < tags.size(); i++) {
+				out.writeShort(tags.get(i).length);
+				out.write(tags.get(i));
+				out.writeInt(sectionOffset);
+				sectionOffset += sections.get(i).length;
+			}
+			for (byte[] section : sections) {
+				out.write(section);
+			}
+			out.flush();
+		}
+		finally {
+			os.close();
+		}
+	}
+
+	private static byte[] writeSection(Properties props) throws IOException {
+		List<byte[][]> entries = new ArrayList<byte[][]>();
+		for (String key : props.stringPropertyNames()) {
+			entries.add(new byte[][] {key.getBytes(UTF_8), props.getProperty(key).getBytes(UTF_8)});
+		}
+		Collections.sort(entries, new Comparator<byte[][]>() {
+			@Override
+			public int compare(byte[][] entry1, byte[][] entry2) {
+				return compareBytes(entry1[0], entry2[0]);
+			}
+		});
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(entries.size());
+		int offset = 4 + entries.size() * ENTRY_SIZE;
+		for (byte[][] entry : entries) {
+			out.writeInt(offset);
+			out.writeInt(entry[0].length);
+			offset += entry[0].length;
+			out.writeInt(offset);
+			out.writeInt(entry[1].length);
+			offset += entry[1].length;
+		}
+		for (byte[][] entry : entries) {
+			out.write(entry[0]);
+			out.write(entry[1]);
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	static int compareBytes(byte[] bytes1, byte[] bytes2) {
+		int length = Math.min(bytes1.length, bytes2.length);
+		for (int i = 0; i < length; i++) {
+			int diff = (bytes1[i] & 0xFF) - (bytes2[i] & 0xFF);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return bytes1.length - bytes2.length;
+	}
+}
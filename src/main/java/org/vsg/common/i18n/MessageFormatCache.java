@@ -0,0 +1,79 @@
+/**
+ *
+ */
+package org.vsg.common.i18n;
+
+import java.text.MessageFormat;
+import java.util.Locale;
+
+/**
+ * Bounded cache of compiled MessageFormats, keyed by owner, message code
+ * or text, and Locale.
+ * @author vison ruan
+ *
+ */
+final class MessageFormatCache extends BoundedCache<MessageFormatCache.Key, MessageFormat> {
+
+	/**
+	 * Create a cache holding formats up to the given total weight.
+	 */
+	MessageFormatCache(long maximumWeight) {
+		super(maximumWeight);
+	}
+
+	/**
+	 * Return the cached format, or {@code null} if none.
+	 * @param owner the owner of the code, e.g. a bundle holder, or {@code null}
+	 * @param text the message code or text
+	 * @param locale the Locale
+	 */
+	MessageFormat get(Object owner, String text, Locale locale) {
+		return get(new Key(owner, text, locale));
+	}
+
+	/**
+	 * Cache the given format unless another thread cached one for the
+	 * same key meanwhile.
+	 * @return the cached format
+	 */
+	MessageFormat putIfAbsent(Object owner, String text, Locale locale, MessageFormat value, int weight) {
+		return putIfAbsent(new Key(owner, text, locale), value, weight);
+	}
+
+
+	static final class Key {
+
+		private final Object owner;
+
+		private final String text;
+
+		private final Locale locale;
+
+		private final int hash;
+
+		Key(Object owner, String text, Locale locale) {
+			this.owner = owner;
+			this.text = text;
+			this.locale = locale;
+			this.hash = (System.identityHashCode(owner) * 31 + text.hashCode()) * 31 + locale.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key otherKey = (Key) other;
+			return (this.owner == otherKey.owner && this.text.equals(otherKey.text) &&
+					this.locale.equals(otherKey.locale));
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
+}
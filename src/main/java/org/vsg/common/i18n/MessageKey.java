@@ -0,0 +1,38 @@
+package org.vsg.common.i18n;
+
+/**
+ * Pre-resolved handle for a message code, obtained once through
+ * {@link ReLoaderI18nMessageSource#key(String)} and typically held in a
+ * static field. Lookups through a key read the resolved message table
+ * by index instead of hashing the code.
+ * @author vison ruan
+ *
+ */
+public final class MessageKey {
+
+	private final String code;
+
+	private final int id;
+
+
+	MessageKey(String code, int id) {
+		this.code = code;
+		this.id = id;
+	}
+
+	/**
+	 * Return the message code this key stands for.
+	 */
+	public String getCode() {
+		return this.code;
+	}
+
+	int getId() {
+		return this.id;
+	}
+
+	@Override
+	public String toString() {
+		return "MessageKey [" + this.code + "]";
+	}
+}
@@ -1,6 +1,8 @@
 package org.vsg.common.i18n;
 
+import java.util.Collection;
 import java.util.Locale;
+import java.util.Map;
 
 
 /**
@@ -53,4 +55,28 @@ public interface MessageSource {
 	 */
 	String getMessage(MessageSourceResolvable resolvable, Locale locale) throws NoSuchMessageException;
 
+	/**
+	 * Resolve the given codes without arguments, as a batch for one Locale.
+	 * <p>Each code is resolved like {@link #getMessage(String, Object[], String, Locale)}
+	 * with no arguments and no default message would, including common messages,
+	 * parent sources and the code-as-default-message fallback.
+	 * @param codes the codes to look up
+	 * @param locale the Locale in which to do the lookup
+	 * @return the messages by code, in the order of the given codes;
+	 * codes that can't be resolved are left out
+	 */
+	Map<String, String> getMessages(Collection<String> codes, Locale locale);
+
+	/**
+	 * Resolve the given resolvables, as a batch for one Locale.
+	 * <p>Each resolvable is resolved like {@link #getMessage(MessageSourceResolvable, Locale)}
+	 * would, except that one that can't be resolved is left out instead of
+	 * causing a {@code NoSuchMessageException}.
+	 * @param resolvables the resolvables to look up
+	 * @param locale the Locale in which to do the lookup
+	 * @return the messages by resolvable, in the order of the given resolvables
+	 */
+	Map<MessageSourceResolvable, String> getResolvableMessages(
+			Collection<? extends MessageSourceResolvable> resolvables, Locale locale);
+
 }
\ No newline at end of file
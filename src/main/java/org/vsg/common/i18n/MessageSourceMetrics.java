@@ -0,0 +1,49 @@
+package org.vsg.common.i18n;
+
+/**
+ * SPI for collecting metrics of a message source: lookups, resolution
+ * against the bundles, bundle file loads, MessageFormat compilation and
+ * formatting.
+ * <p>Implementations are called on the lookup path of all threads and must
+ * be thread-safe and cheap; see {@link DefaultMessageSourceMetrics} for one
+ * based on {@code LongAdder}s that can be read as a snapshot.
+ * @author vison ruan
+ * @see MessageSourceSupport#setMetrics
+ */
+public interface MessageSourceMetrics {
+
+	/**
+	 * Record a message lookup through {@code getMessageInternal}, i.e. of a
+	 * single code, including common messages and parent sources.
+	 * @param found whether a message was found
+	 */
+	void recordLookup(boolean found);
+
+	/**
+	 * Record the resolution of a code against the bundles of the source,
+	 * through {@code resolveCode} or {@code resolveCodeWithoutArguments}.
+	 * @param found whether the code was found
+	 */
+	void recordResolve(boolean found);
+
+	/**
+	 * Record the load of a bundle file.
+	 * @param filename the bundle filename (basename + Locale)
+	 * @param found whether the file exists
+	 * @param nanos the time taken to load and parse the file
+	 */
+	void recordLoad(String filename, boolean found, long nanos);
+
+	/**
+	 * Record the compilation of a message into a MessageFormat.
+	 * @param nanos the time taken
+	 */
+	void recordCompile(long nanos);
+
+	/**
+	 * Record the formatting of a message with arguments.
+	 * @param nanos the time taken
+	 */
+	void recordFormat(long nanos);
+
+}
@@ -1,9 +1,28 @@
 package org.vsg.common.i18n;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.text.MessageFormat;
-import java.util.HashMap;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.Month;
+import java.time.MonthDay;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.Period;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Locale;
-import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,18 +40,36 @@ import org.slf4j.LoggerFactory;
 public class MessageSourceSupport {
 	private static final MessageFormat INVALID_MESSAGE_FORMAT = new MessageFormat("");
 
+	/** Argument types whose instances are immutable values, besides enums */
+	private static final Set<Class<?>> IMMUTABLE_ARGUMENT_TYPES = Collections.unmodifiableSet(
+			new HashSet<Class<?>>(Arrays.<Class<?>> asList(
+					String.class, Integer.class, Long.class, Short.class, Byte.class, Double.class,
+					Float.class, Boolean.class, Character.class, BigDecimal.class, BigInteger.class,
+					LocalDate.class, LocalTime.class, LocalDateTime.class, Instant.class, Duration.class,
+					Period.class, ZonedDateTime.class, OffsetDateTime.class, OffsetTime.class,
+					Year.class, YearMonth.class, MonthDay.class, ZoneOffset.class, DayOfWeek.class,
+					Month.class)));
+
+	/** Default maximum weight of a MessageFormat cache, in message characters */
+	public static final long DEFAULT_MESSAGE_FORMAT_CACHE_WEIGHT = 1024 * 1024;
+
 	/** Logger available to subclasses */
 	protected final Logger logger = LoggerFactory.getLogger(MessageSourceSupport.class);
 
 	private boolean alwaysUseMessageFormat = false;
 
+	private MessageSourceMetrics metrics;
+
 	/**
 	 * Cache to hold already generated MessageFormats per message.
 	 * Used for passed-in default messages. MessageFormats for resolved
 	 * codes are cached on a specific basis in subclasses.
 	 */
-	private final Map<String, Map<Locale, MessageFormat>> messageFormatsPerMessage =
-			new HashMap<String, Map<Locale, MessageFormat>>();
+	private volatile MessageFormatCache messageFormatsPerMessage =
+			new MessageFormatCache(DEFAULT_MESSAGE_FORMAT_CACHE_WEIGHT);
+
+	/** Cache of rendered messages per message, Locale and arguments, if enabled */
+	private volatile BoundedCache<RenderedMessageKey, String> renderedMessages;
 
 
 	/**
@@ -61,6 +98,83 @@ public class MessageSourceSupport {
 		return this.alwaysUseMessageFormat;
 	}
 
+	/**
+	 * Set the metrics to record lookups, bundle loads, MessageFormat
+	 * compilation and formatting into, e.g. a {@link DefaultMessageSourceMetrics}.
+	 * <p>Default is none, recording nothing.
+	 */
+	public void setMetrics(MessageSourceMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Return the metrics to record into, or {@code null} if none.
+	 */
+	public MessageSourceMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * Set the maximum total weight of the cache of MessageFormats compiled
+	 * from passed-in default messages, the weight of a format being the
+	 * length of its message text. Default is {@link #DEFAULT_MESSAGE_FORMAT_CACHE_WEIGHT}.
+	 * <p>Keeps callers that build default messages dynamically from growing
+	 * the cache without bound. Replaces the current cache.
+	 */
+	public void setDefaultMessageFormatCacheWeight(long maximumWeight) {
+		this.messageFormatsPerMessage = new MessageFormatCache(maximumWeight);
+	}
+
+	/**
+	 * Return size, hit, miss and eviction statistics of the cache of
+	 * MessageFormats compiled from passed-in default messages.
+	 * @see #setDefaultMessageFormatCacheWeight
+	 */
+	public CacheStats getDefaultMessageFormatCacheStats() {
+		return this.messageFormatsPerMessage.getStats();
+	}
+
+	/**
+	 * Set the maximum total weight of a cache of fully rendered messages,
+	 * keyed by message code, Locale, generation of the messages the code
+	 * was resolved from, and arguments, the weight of a message being its
+	 * length. Default is 0, caching no rendered messages.
+	 * <p>Only messages whose arguments are all immutable values (Strings,
+	 * boxed primitives, enums, {@code BigDecimal}/{@code BigInteger} and
+	 * the {@code java.time} value classes) are cached, which covers status
+	 * names, small counts and enum labels rendered over and over. With
+	 * "alwaysUseMessageFormat", messages without arguments are cached too.
+	 * Codes are only cached by sources that tell the
+	 * {@link #getMessageGeneration() generation} of their messages.
+	 * <p>Assumes {@link #resolveArguments} gives the same result for equal
+	 * immutable arguments. Replaces the current cache.
+	 */
+	public void setRenderedMessageCacheWeight(long maximumWeight) {
+		this.renderedMessages = (maximumWeight > 0 ?
+				new BoundedCache<RenderedMessageKey, String>(maximumWeight) : null);
+	}
+
+	/**
+	 * Drop all rendered messages, e.g. once codes get resolved from messages
+	 * whose generations aren't comparable to the ones before.
+	 */
+	void clearRenderedMessages() {
+		BoundedCache<RenderedMessageKey, String> cache = this.renderedMessages;
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Return size, hit, miss and eviction statistics of the rendered
+	 * message cache, or {@code null} if not enabled.
+	 * @see #setRenderedMessageCacheWeight
+	 */
+	public CacheStats getRenderedMessageCacheStats() {
+		BoundedCache<RenderedMessageKey, String> cache = this.renderedMessages;
+		return (cache != null ? cache.getStats() : null);
+	}
+
 
 	/**
 	 * Render the given default message String. The default message is
@@ -94,48 +208,166 @@ public class MessageSourceSupport {
 		if (msg == null || (!this.alwaysUseMessageFormat && (args == null || args.length == 0))) {
 			return msg;
 		}
-		MessageFormat messageFormat = null;
-		synchronized (this.messageFormatsPerMessage) {
-			Map<Locale, MessageFormat> messageFormatsPerLocale = this.messageFormatsPerMessage.get(msg);
-			if (messageFormatsPerLocale != null) {
-				messageFormat = messageFormatsPerLocale.get(locale);
-			}
-			else {
-				messageFormatsPerLocale = new HashMap<Locale, MessageFormat>();
-				this.messageFormatsPerMessage.put(msg, messageFormatsPerLocale);
-			}
-			if (messageFormat == null) {
-				try {
-					messageFormat = createMessageFormat(msg, locale);
+		MessageFormatCache cache = this.messageFormatsPerMessage;
+		MessageFormat messageFormat = cache.get(null, msg, locale);
+		if (messageFormat == null) {
+			long start = (this.metrics != null ? System.nanoTime() : 0);
+			try {
+				messageFormat = createMessageFormat(msg, locale);
+				if (this.metrics != null) {
+					this.metrics.recordCompile(System.nanoTime() - start);
 				}
-				catch (IllegalArgumentException ex) {
-					// invalid message format - probably not intended for formatting,
-					// rather using a message structure with no arguments involved
-					if (this.alwaysUseMessageFormat) {
-						throw ex;
-					}
-					// silently proceed with raw message if format not enforced
-					messageFormat = INVALID_MESSAGE_FORMAT;
+			}
+			catch (IllegalArgumentException ex) {
+				// invalid message format - probably not intended for formatting,
+				// rather using a message structure with no arguments involved
+				if (this.alwaysUseMessageFormat) {
+					throw ex;
 				}
-				messageFormatsPerLocale.put(locale, messageFormat);
+				// silently proceed with raw message if format not enforced
+				messageFormat = INVALID_MESSAGE_FORMAT;
 			}
+			messageFormat = cache.putIfAbsent(null, msg, locale, messageFormat, msg.length());
 		}
 		if (messageFormat == INVALID_MESSAGE_FORMAT) {
 			return msg;
 		}
-		synchronized (messageFormat) {
-			return messageFormat.format(resolveArguments(args, locale));
-		}
+		return applyCachedMessageFormat(msg, RenderedMessageKey.MESSAGE_TEXT, messageFormat, args, locale);
 	}
 
 	/**
 	 * Create a MessageFormat for the given message and Locale.
+	 * <p>The default implementation compiles the message into an immutable
+	 * {@link CompiledMessageFormat} where possible.
 	 * @param msg the message to create a MessageFormat for
 	 * @param locale the Locale to create a MessageFormat for
 	 * @return the MessageFormat instance
 	 */
 	protected MessageFormat createMessageFormat(String msg, Locale locale) {
-		return new MessageFormat((msg != null ? msg : ""), locale);
+		return CompiledMessageFormat.compile(msg, locale);
+	}
+
+	/**
+	 * Format the given arguments with the given MessageFormat.
+	 * <p>A {@link CompiledMessageFormat} is rendered without locking; any other
+	 * MessageFormat is not thread-safe and gets cloned, rather than synchronized
+	 * on, so that no virtual thread pins its carrier waiting for a monitor.
+	 * @param messageFormat the MessageFormat to apply
+	 * @param args the (already resolved) arguments
+	 * @return the formatted message
+	 */
+	protected String applyMessageFormat(MessageFormat messageFormat, Object[] args) {
+		MessageSourceMetrics metrics = this.metrics;
+		if (metrics == null) {
+			return format(messageFormat, args);
+		}
+		long start = System.nanoTime();
+		String result = format(messageFormat, args);
+		metrics.recordFormat(System.nanoTime() - start);
+		return result;
+	}
+
+	/**
+	 * Resolve the given arguments and format them with the MessageFormat the
+	 * given code was resolved to, reusing the rendered message if the rendered
+	 * message cache is enabled, the generation of the messages is known and
+	 * all arguments are immutable values.
+	 * @param code the code the MessageFormat was resolved for
+	 * @param generation the generation of the messages the code was resolved
+	 * from, taken before resolving it, or -1 if unknown
+	 * @param messageFormat the MessageFormat to apply
+	 * @param args the original, unresolved arguments, or {@code null} if none
+	 * @param locale the Locale the code was resolved for
+	 * @return the formatted message
+	 * @see #setRenderedMessageCacheWeight
+	 * @see #getMessageGeneration()
+	 */
+	protected String applyMessageFormat(String code, long generation, MessageFormat messageFormat,
+			Object[] args, Locale locale) {
+		if (generation < 0) {
+			return applyMessageFormat(messageFormat, resolveArguments(args, locale));
+		}
+		return applyCachedMessageFormat(code, generation, messageFormat, args, locale);
+	}
+
+	/**
+	 * Resolve the given arguments and format them with the MessageFormat the
+	 * given code was resolved to, appending to the given buffer. A
+	 * {@link CompiledMessageFormat} renders straight into the buffer unless
+	 * the rendered message cache is enabled.
+	 * @param code the code the MessageFormat was resolved for
+	 * @param generation the generation of the messages the code was resolved
+	 * from, taken before resolving it, or -1 if unknown
+	 * @param messageFormat the MessageFormat to apply
+	 * @param args the original, unresolved arguments, or {@code null} if none
+	 * @param locale the Locale the code was resolved for
+	 * @param out the buffer to append the formatted message to
+	 */
+	protected void applyMessageFormat(String code, long generation, MessageFormat messageFormat,
+			Object[] args, Locale locale, StringBuilder out) {
+		if (this.renderedMessages != null || !(messageFormat instanceof CompiledMessageFormat)) {
+			out.append(applyMessageFormat(code, generation, messageFormat, args, locale));
+			return;
+		}
+		Object[] argsToUse = resolveArguments(args, locale);
+		MessageSourceMetrics metrics = this.metrics;
+		long start = (metrics != null ? System.nanoTime() : 0);
+		((CompiledMessageFormat) messageFormat).render(argsToUse, out);
+		if (metrics != null) {
+			metrics.recordFormat(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Return the generation of the messages this source resolves codes to
+	 * itself, which changes whenever a code may resolve to a different
+	 * message than before; or -1 if this can't be told, so that messages
+	 * resolved from codes are not kept in the rendered message cache.
+	 * <p>The default implementation returns -1.
+	 * @see #setRenderedMessageCacheWeight
+	 */
+	protected long getMessageGeneration() {
+		return -1;
+	}
+
+	/**
+	 * Format with the rendered message cache, keyed by the given code or
+	 * message text and generation.
+	 */
+	private String applyCachedMessageFormat(String message, long generation, MessageFormat messageFormat,
+			Object[] args, Locale locale) {
+		BoundedCache<RenderedMessageKey, String> cache = this.renderedMessages;
+		if (cache == null || !isImmutableArguments(args)) {
+			return applyMessageFormat(messageFormat, resolveArguments(args, locale));
+		}
+		RenderedMessageKey key = new RenderedMessageKey(message, generation, locale, args);
+		String result = cache.get(key);
+		if (result == null) {
+			result = applyMessageFormat(messageFormat, resolveArguments(args, locale));
+			// copy the arguments, as the caller may reuse its array
+			cache.putIfAbsent(new RenderedMessageKey(message, generation, locale, (args != null ? args.clone() : null)),
+					result, result.length());
+		}
+		return result;
+	}
+
+	private static boolean isImmutableArguments(Object[] args) {
+		if (args == null) {
+			return true;
+		}
+		for (Object arg : args) {
+			if (arg != null && !(arg instanceof Enum || IMMUTABLE_ARGUMENT_TYPES.contains(arg.getClass()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String format(MessageFormat messageFormat, Object[] args) {
+		if (messageFormat instanceof CompiledMessageFormat) {
+			return ((CompiledMessageFormat) messageFormat).render(args);
+		}
+		return ((MessageFormat) messageFormat.clone()).format(args);
 	}
 
 	/**
@@ -149,4 +381,59 @@ public class MessageSourceSupport {
 	protected Object[] resolveArguments(Object[] args, Locale locale) {
 		return args;
 	}
+
+
+	/**
+	 * Key of a rendered message: the message code and the generation of the
+	 * messages it was resolved from, or the message text itself for passed-in
+	 * messages; plus the Locale and the arguments. Once the messages get
+	 * reloaded, their old renderings are never hit again and age out of the
+	 * cache, without keeping their MessageFormats reachable.
+	 */
+	private static final class RenderedMessageKey {
+
+		/** Generation of keys holding a message text rather than a code */
+		static final long MESSAGE_TEXT = -1;
+
+		private static final Object[] NO_ARGS = new Object[0];
+
+		private final String message;
+
+		private final long generation;
+
+		private final Locale locale;
+
+		private final Object[] args;
+
+		private final int hash;
+
+		RenderedMessageKey(String message, long generation, Locale locale, Object[] args) {
+			this.message = message;
+			this.generation = generation;
+			this.locale = locale;
+			this.args = (args != null ? args : NO_ARGS);
+			int hash = message.hashCode();
+			hash = hash * 31 + (int) (generation ^ (generation >>> 32));
+			hash = hash * 31 + locale.hashCode();
+			this.hash = hash * 31 + Arrays.hashCode(this.args);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof RenderedMessageKey)) {
+				return false;
+			}
+			RenderedMessageKey otherKey = (RenderedMessageKey) other;
+			return (this.generation == otherKey.generation && this.message.equals(otherKey.message) &&
+					this.locale.equals(otherKey.locale) && Arrays.equals(this.args, otherKey.args));
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+	}
 }
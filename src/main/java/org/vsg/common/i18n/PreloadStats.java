@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package org.vsg.common.i18n;
+
+/**
+ * Timing and size figures of one {@link ReLoaderI18nMessageSource#preload} run.
+ * @author vison ruan
+ *
+ */
+public final class PreloadStats {
+
+	private final int localeCount;
+
+	private final int fileCount;
+
+	private final int loadedFileCount;
+
+	private final int messageFormatCount;
+
+	private final long loadMillis;
+
+	private final long mergeMillis;
+
+	private final long compileMillis;
+
+
+	PreloadStats(int localeCount, int fileCount, int loadedFileCount, int messageFormatCount,
+			long loadMillis, long mergeMillis, long compileMillis) {
+		this.localeCount = localeCount;
+		this.fileCount = fileCount;
+		this.loadedFileCount = loadedFileCount;
+		this.messageFormatCount = messageFormatCount;
+		this.loadMillis = loadMillis;
+		this.mergeMillis = mergeMillis;
+		this.compileMillis = compileMillis;
+	}
+
+	/**
+	 * Return the number of Locales preloaded.
+	 */
+	public int getLocaleCount() {
+		return localeCount;
+	}
+
+	/**
+	 * Return the number of distinct bundle files looked up.
+	 */
+	public int getFileCount() {
+		return fileCount;
+	}
+
+	/**
+	 * Return the number of bundle files that exist.
+	 */
+	public int getLoadedFileCount() {
+		return loadedFileCount;
+	}
+
+	/**
+	 * Return the number of message templates precompiled, 0 if not requested.
+	 */
+	public int getMessageFormatCount() {
+		return messageFormatCount;
+	}
+
+	/**
+	 * Return the wall-clock time spent loading the bundle files.
+	 */
+	public long getLoadMillis() {
+		return loadMillis;
+	}
+
+	/**
+	 * Return the wall-clock time spent building the merged views.
+	 */
+	public long getMergeMillis() {
+		return mergeMillis;
+	}
+
+	/**
+	 * Return the wall-clock time spent precompiling message templates.
+	 */
+	public long getCompileMillis() {
+		return compileMillis;
+	}
+
+	/**
+	 * Return the total wall-clock time of the preload.
+	 */
+	public long getTotalMillis() {
+		return this.loadMillis + this.mergeMillis + this.compileMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "PreloadStats[locales=" + this.localeCount + ", files=" + this.loadedFileCount + "/" + this.fileCount +
+				", messageFormats=" + this.messageFormatCount + ", load=" + this.loadMillis + "ms, merge=" +
+				this.mergeMillis + "ms, compile=" + this.compileMillis + "ms]";
+	}
+}
@@ -4,10 +4,13 @@
 package org.vsg.common.i18n;
 
 import java.text.MessageFormat;
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * @author vison ruan
@@ -16,26 +19,132 @@ import java.util.Properties;
 class PropertiesHolder {
 	private Properties properties;
 
-	private long fileTimestamp = -1;
+	/** Messages parsed straight into an unmodifiable map, used instead of the properties */
+	private Map<String, String> messages;
+
+	/** Packed messages, used instead of the properties in compact storage mode */
+	private MessageArena arena;
 
-	private long refreshTimestamp = -1;
+	private long fileTimestamp = -1;
 
-	/** Cache to hold already generated MessageFormats per message code */
-	private final Map<String, Map<Locale, MessageFormat>> cachedMessageFormats =
-			new HashMap<String, Map<Locale, MessageFormat>>();
+	private volatile long refreshTimestamp = -1;
 
 	public PropertiesHolder(Properties properties, long fileTimestamp) {
 		this.properties = properties;
 		this.fileTimestamp = fileTimestamp;
 	}
 
+	public PropertiesHolder(Map<String, String> messages, long fileTimestamp) {
+		this.messages = messages;
+		this.fileTimestamp = fileTimestamp;
+	}
+
+	public PropertiesHolder(MessageArena arena, long fileTimestamp) {
+		this.arena = arena;
+		this.fileTimestamp = fileTimestamp;
+	}
+
 	public PropertiesHolder() {
 	}
 
+	/**
+	 * Return the properties, or {@code null} if the bundle file was not found.
+	 * <p>For a holder not based on {@code Properties}, this creates a new
+	 * copy on every call.
+	 */
 	public Properties getProperties() {
+		if (this.messages != null || this.arena != null) {
+			Properties props = new Properties();
+			copyTo(props);
+			return props;
+		}
 		return properties;
 	}
 
+	/**
+	 * Return whether this holder has any properties, i.e. its bundle file was found.
+	 */
+	public boolean hasProperties() {
+		return (this.properties != null || this.messages != null || this.arena != null);
+	}
+
+	/**
+	 * Return all message codes of this holder.
+	 */
+	public Set<String> getCodes() {
+		if (this.messages != null) {
+			return this.messages.keySet();
+		}
+		if (this.arena != null) {
+			return this.arena.codes();
+		}
+		if (this.properties != null) {
+			return this.properties.stringPropertyNames();
+		}
+		return Collections.emptySet();
+	}
+
+	/**
+	 * Copy all messages of this holder into the given map.
+	 */
+	public void copyTo(Map<? super String, ? super String> target) {
+		if (this.messages != null) {
+			target.putAll(this.messages);
+		}
+		else if (this.arena != null) {
+			this.arena.copyTo(target);
+		}
+		else if (this.properties != null) {
+			for (String code : this.properties.stringPropertyNames()) {
+				target.put(code, this.properties.getProperty(code));
+			}
+		}
+	}
+
+	/**
+	 * Iterate over all messages of this holder, without copying them.
+	 */
+	public Iterator<Map.Entry<String, String>> entryIterator() {
+		if (this.messages != null) {
+			return Collections.unmodifiableMap(this.messages).entrySet().iterator();
+		}
+		if (this.arena != null) {
+			return this.arena.entryIterator();
+		}
+		if (this.properties instanceof MergedMessagesView) {
+			return ((MergedMessagesView) this.properties).entryIterator();
+		}
+		if (this.properties != null) {
+			final Iterator<String> codes = this.properties.stringPropertyNames().iterator();
+			return new Iterator<Map.Entry<String, String>>() {
+				@Override
+				public boolean hasNext() {
+					return codes.hasNext();
+				}
+				@Override
+				public Map.Entry<String, String> next() {
+					String code = codes.next();
+					return new AbstractMap.SimpleImmutableEntry<String, String>(code, properties.getProperty(code));
+				}
+			};
+		}
+		return Collections.<Map.Entry<String, String>> emptyIterator();
+	}
+
+	/**
+	 * Return a holder keeping the messages packed in a {@link MessageArena},
+	 * with the same timestamps, or this holder if already compact or empty.
+	 */
+	public PropertiesHolder compact() {
+		if (this.properties == null && this.messages == null) {
+			return this;
+		}
+		MessageArena arena = MessageArena.build(this.messages != null ? this.messages : this.properties);
+		PropertiesHolder compact = new PropertiesHolder(arena, this.fileTimestamp);
+		compact.setRefreshTimestamp(this.refreshTimestamp);
+		return compact;
+	}
+
 	public long getFileTimestamp() {
 		return fileTimestamp;
 	}
@@ -49,39 +158,48 @@ class PropertiesHolder {
 	}
 
 	public String getProperty(String code) {
+		if (this.messages != null) {
+			return this.messages.get(code);
+		}
+		if (this.arena != null) {
+			return this.arena.get(code);
+		}
 		if (this.properties == null) {
 			return null;
 		}
 		return this.properties.getProperty(code);
 	}
 
-	public MessageFormat getMessageFormat(String code, Locale locale) {
-		if (this.properties == null) {
+	/**
+	 * Return the MessageFormat for the given code and Locale from the given
+	 * cache, compiling and caching it on a miss.
+	 * <p>Entries are keyed by this holder, so a reloaded holder never sees
+	 * formats of its predecessor, whose entries age out of the cache.
+	 * @param cache the bounded cache of compiled formats
+	 * @param metrics the metrics to record the compilation into, may be {@code null}
+	 */
+	public MessageFormat getMessageFormat(String code, Locale locale, MessageFormatCache cache,
+			MessageSourceMetrics metrics) {
+		if (!hasProperties()) {
 			return null;
 		}
-		synchronized (this.cachedMessageFormats) {
-			Map<Locale, MessageFormat> localeMap = this.cachedMessageFormats.get(code);
-			if (localeMap != null) {
-				MessageFormat result = localeMap.get(locale);
-				if (result != null) {
-					return result;
-				}
-			}
-			String msg = this.properties.getProperty(code);
-			if (msg != null) {
-				if (localeMap == null) {
-					localeMap = new HashMap<Locale, MessageFormat>();
-					this.cachedMessageFormats.put(code, localeMap);
-				}
-				MessageFormat result = createMessageFormat(msg, locale);
-				localeMap.put(locale, result);
-				return result;
-			}
+		MessageFormat result = cache.get(this, code, locale);
+		if (result != null) {
+			return result;
+		}
+		String msg = getProperty(code);
+		if (msg == null) {
 			return null;
 		}
+		long start = (metrics != null ? System.nanoTime() : 0);
+		result = createMessageFormat(msg, locale);
+		if (metrics != null) {
+			metrics.recordCompile(System.nanoTime() - start);
+		}
+		return cache.putIfAbsent(this, code, locale, result, msg.length());
 	}
 	
 	protected MessageFormat createMessageFormat(String msg, Locale locale) {
-		return new MessageFormat((msg != null ? msg : ""), locale);
+		return CompiledMessageFormat.compile(msg, locale);
 	}	
 }
@@ -3,19 +3,49 @@
  */
 package org.vsg.common.i18n;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +59,9 @@ public abstract class ReLoaderI18nMessageSource extends AbstractMessageSource im
 	
 	static final String PROPERTIES_SUFFIX = ".properties";
 
+	/** Maximum number of codes remembered as absent per Locale */
+	private static final int MAX_ABSENT_CODES = 10000;
+
 	private static Logger logger = LoggerFactory.getLogger( ReLoaderI18nMessageSource.class );
 	
 	protected long cacheMillis = -1;		
@@ -37,20 +70,41 @@ public abstract class ReLoaderI18nMessageSource extends AbstractMessageSource im
 	
 	private String defaultEncoding = "UTF-8";
 	
-	private final Map<String, PropertiesHolder> cachedProperties = new HashMap<String, PropertiesHolder>();
+	private final ConcurrentMap<String, PropertiesHolder> cachedProperties =
+			new ConcurrentHashMap<String, PropertiesHolder>();
 	
-	private PropertiesPersister propertiesPersister = new DefaultPropertiesPersister();	
+	private PropertiesPersister propertiesPersister = new StreamingPropertiesPersister();
 	
 	private String[] basenames;
 	
 	private Locale locale;	
 
+	private volatile LocaleContext localeContext = ThreadLocalLocaleContext.getSharedInstance();
+
+	private final ConcurrentMap<String, MessageKey> messageKeys = new ConcurrentHashMap<String, MessageKey>();
+
+	/**
+	 * Guards key registration and lazy initialization. A j.u.c. lock rather
+	 * than a monitor, so that virtual threads waiting on it don't pin their
+	 * carrier; no I/O runs while it is held.
+	 */
+	private final ReentrantLock keysLock = new ReentrantLock();
+
+	/** All registered keys, indexed by id; replaced on registration */
+	private volatile MessageKey[] keysById = new MessageKey[0];
+
+	private final ConcurrentMap<Locale, LocaleKey> localeKeys = new ConcurrentHashMap<Locale, LocaleKey>();
+
+	/** Resolved messages indexed by [locale id][code id]; replaced as a whole on change */
+	private final AtomicReference<String[][]> messageTable = new AtomicReference<String[][]>(new String[0][]);
+
 	public String[] getBasenames() {
 		return basenames;
 	}
 
 	public void setBasenames(String[] basenames) {
 		this.basenames = basenames;
+		clearMergedProperties();
 	}
 	
 	
@@ -62,35 +116,235 @@ public abstract class ReLoaderI18nMessageSource extends AbstractMessageSource im
 		return locale;
 	}
 
+	/**
+	 * Set the fallback Locale of the Locale-less methods, used when the
+	 * Locale context has no Locale for the current thread.
+	 * @see #setLocaleContext
+	 */
 	protected void setLocale(Locale locale) {
 		this.locale = locale;
 	}
 
-	/* (non-Javadoc)
-	 * @see org.vsg.common.i18n.I18nMesssageSupport#getMessage(java.lang.String, java.lang.Object[], java.lang.String)
+	/**
+	 * Set the context resolving the Locale of the current request for the
+	 * Locale-less {@link I18nMesssageSupport} methods. Default is the shared
+	 * {@link ThreadLocalLocaleContext}.
+	 */
+	public void setLocaleContext(LocaleContext localeContext) {
+		this.localeContext = localeContext;
+	}
+
+	/**
+	 * Return the context resolving the Locale of the current request.
+	 */
+	public LocaleContext getLocaleContext() {
+		return this.localeContext;
+	}
+
+	/**
+	 * Determine the Locale for the Locale-less methods: the Locale of the
+	 * Locale context, else the Locale set on this source, else the default Locale.
+	 */
+	protected Locale resolveCurrentLocale() {
+		LocaleContext localeContext = this.localeContext;
+		Locale current = (localeContext != null ? localeContext.getLocale() : null);
+		if (current == null) {
+			current = this.locale;
+		}
+		return (current != null ? current : Locale.getDefault());
+	}
+
+	/**
+	 * Resolve the message in the Locale of the current request, returning
+	 * the given default message if not found.
+	 * @see #resolveCurrentLocale()
 	 */
 	@Override
 	public String getMessage(String code, Object[] args, String def) {
-		// TODO Auto-generated method stub
-		
-		return null;
+		return getMessage(code, args, def, resolveCurrentLocale());
 	}
 
-	/* (non-Javadoc)
-	 * @see org.vsg.common.i18n.I18nMesssageSupport#getMessage(java.lang.String, java.lang.Object[])
+	/**
+	 * Resolve the message in the Locale of the current request.
+	 * @throws NoSuchMessageException if the message wasn't found
+	 * @see #resolveCurrentLocale()
 	 */
 	@Override
 	public String getMessage(String code, Object[] args) {
-		String msg = getMessageInternal(code, args, locale);
-		if (msg != null) {
-			return msg;
+		return getMessage(code, args, resolveCurrentLocale());
+	}
+
+	/**
+	 * Return the pre-resolved key for the given message code, registering
+	 * it on first use. Keys are meant to be obtained once and held by the
+	 * caller, e.g. in static fields.
+	 * @param code the message code
+	 * @return the key for the code, never {@code null}
+	 * @see #getMessage(MessageKey, LocaleKey)
+	 */
+	public MessageKey key(String code) {
+		MessageKey key = this.messageKeys.get(code);
+		if (key != null) {
+			return key;
+		}
+		this.keysLock.lock();
+		try {
+			key = this.messageKeys.get(code);
+			if (key == null) {
+				MessageKey[] keys = Arrays.copyOf(this.keysById, this.keysById.length + 1);
+				key = new MessageKey(code, this.keysById.length);
+				keys[key.getId()] = key;
+				this.keysById = keys;
+				this.messageKeys.put(code, key);
+			}
+			return key;
+		}
+		finally {
+			this.keysLock.unlock();
+		}
+	}
+
+	/**
+	 * Return the pre-resolved key for the given Locale, registering it
+	 * on first use.
+	 * @param locale the Locale, or {@code null} for the default Locale
+	 * @return the key for the Locale, never {@code null}
+	 * @see #getMessage(MessageKey, LocaleKey)
+	 */
+	public LocaleKey localeKey(Locale locale) {
+		if (locale == null) {
+			locale = Locale.getDefault();
+		}
+		LocaleKey localeKey = this.localeKeys.get(locale);
+		if (localeKey != null) {
+			return localeKey;
+		}
+		this.keysLock.lock();
+		try {
+			localeKey = this.localeKeys.get(locale);
+			if (localeKey == null) {
+				localeKey = new LocaleKey(locale, this.localeKeys.size());
+				this.localeKeys.put(locale, localeKey);
+			}
+			return localeKey;
+		}
+		finally {
+			this.keysLock.unlock();
+		}
+	}
+
+	/**
+	 * Resolve the message for pre-resolved code and Locale keys.
+	 * <p>Messages found in the bundles are read from a dense table indexed by
+	 * Locale and code id, built once per Locale from the merged bundles.
+	 * Keys give no speed-up over the regular
+	 * {@link #getMessage(String, Object[], Locale)} path, which they fall
+	 * back to, in these cases:
+	 * <ul>
+	 * <li>sources that refresh their bundles ({@code cacheMillis >= 0})
+	 * <li>sources that always use MessageFormat
+	 * ({@link #setAlwaysUseMessageFormat alwaysUseMessageFormat})
+	 * <li>codes missing from the Locale's row, i.e. resolved from the
+	 * common messages or a parent, or not found at all
+	 * </ul>
+	 * <p>Rows are merged with the fallback to the system Locale in effect
+	 * when they are built; a change of the system Locale is noticed when
+	 * rows are built or invalidated, not on every read.
+	 * @param key the message code key
+	 * @param localeKey the Locale key
+	 * @return the resolved message
+	 * @throws NoSuchMessageException if the message wasn't found
+	 */
+	public String getMessage(MessageKey key, LocaleKey localeKey) throws NoSuchMessageException {
+		if (this.cacheMillis < 0 && !isAlwaysUseMessageFormat()) {
+			String[][] table = this.messageTable.get();
+			int localeId = localeKey.getId();
+			String[] row = (localeId < table.length ? table[localeId] : null);
+			if (row == null || key.getId() >= row.length) {
+				row = buildMessageTableRow(localeKey);
+			}
+			String msg = row[key.getId()];
+			if (msg != null) {
+				MessageSourceMetrics metrics = getMetrics();
+				if (metrics != null) {
+					metrics.recordLookup(true);
+				}
+				return msg;
+			}
+		}
+		return getMessage(key.getCode(), null, localeKey.getLocale());
+	}
+
+	/**
+	 * Build and publish the table row for the given Locale, covering all
+	 * keys registered so far. Retried if the table got replaced meanwhile,
+	 * so that a row built from invalidated bundles is never published.
+	 */
+	private String[] buildMessageTableRow(LocaleKey localeKey) {
+		// Rows get merged with the fallback to the system Locale in effect.
+		checkDefaultLocale();
+		int localeId = localeKey.getId();
+		while (true) {
+			String[][] table = this.messageTable.get();
+			MessageKey[] keys = this.keysById;
+			PropertiesHolder mergedHolder = getMergedProperties(localeKey.getLocale());
+			String[] row = new String[keys.length];
+			for (MessageKey key : keys) {
+				row[key.getId()] = mergedHolder.getProperty(key.getCode());
+			}
+			String[][] updated = Arrays.copyOf(table, Math.max(table.length, localeId + 1));
+			updated[localeId] = row;
+			if (this.messageTable.compareAndSet(table, updated)) {
+				return row;
+			}
 		}
-		String fallback = getDefaultMessage(code);
-		if (fallback != null) {
-			return fallback;
+	}
+
+	/**
+	 * Clear the merged per-Locale views, the fallback chains and everything
+	 * derived from them, forcing them to be rebuilt from the per-file cache
+	 * on next access.
+	 */
+	protected void clearMergedProperties() {
+		this.cachedFallbackChains.clear();
+		this.cachedAbsentCodes.clear();
+		this.cachedFlattenedHierarchies.clear();
+		this.cachedMergedProperties.clear();
+		this.messageTable.set(new String[0][]);
+		this.propertiesGeneration.incrementAndGet();
+		invalidateResolutionPlans();
+	}
+
+	/**
+	 * The messages of a source change whenever a bundle file gets reloaded
+	 * or the bundle files to look up change.
+	 */
+	@Override
+	protected long getMessageGeneration() {
+		return this.propertiesGeneration.get();
+	}
+
+	/**
+	 * Stamp bundle contents by the properties generation. Sources that
+	 * refresh their bundles ({@code cacheMillis >= 0}) can't tell when a
+	 * file changes before it is reloaded, so they cache no resolution plans.
+	 */
+	@Override
+	protected long getResolutionStamp() {
+		if (this.cacheMillis >= 0) {
+			return -1;
 		}
-		throw new NoSuchMessageException(code, locale);		
+		return getChainResolutionStamp(this.propertiesGeneration.get());
+	}
 
+	/**
+	 * Clear the resource bundle cache, forcing all bundle files to be
+	 * reloaded on next access.
+	 */
+	public void clearCache() {
+		this.cachedProperties.clear();
+		this.messageFormatCache.clear();
+		clearMergedProperties();
 	}
 	
 	/**
@@ -121,6 +375,8 @@ public abstract class ReLoaderI18nMessageSource extends AbstractMessageSource im
 	 * Resolve the given code and arguments as message in the given Locale,
 	 * returning {@code null} if not found. Does <i>not</i> fall back to
 	 * the code as default message. Invoked by {@code getMessage} methods.
+	 * <p>Codes found absent for the Locale before are answered without any
+	 * lookup, as long as none of the sources in the hierarchy has changed.
 	 * @param code the code to lookup up, such as 'calculator.noRateSet'
 	 * @param args array of arguments that will be filled in for params
 	 * within the message
@@ -132,61 +388,190 @@ public abstract class ReLoaderI18nMessageSource extends AbstractMessageSource im
 	 * @see #setUseCodeAsDefaultMessage
 	 */
 	protected String getMessageInternal(String code, Object[] args, Locale locale) {
+		if (code != null && this.flattenHierarchy) {
+			return getFlattenedMessage(code, args, (locale != null ? locale : Locale.getDefault()));
+		}
 		if (code == null) {
+			return super.getMessageInternal(code, args, locale);
+		}
+		Locale localeToUse = (locale != null ? locale : Locale.getDefault());
+		// Taken before the lookup, so that a miss is only recorded if nothing
+		// has changed in the hierarchy while looking up.
+		AbsentCodes absentCodes = this.cachedAbsentCodes.get(localeToUse);
+		if (absentCodes == null) {
+			absentCodes = new AbsentCodes(this);
+			AbsentCodes existing = this.cachedAbsentCodes.putIfAbsent(localeToUse, absentCodes);
+			if (existing != null) {
+				absentCodes = existing;
+			}
+		}
+		else if (absentCodes.codes.contains(code) && absentCodes.isUpToDate()) {
+			// Not in any bundle, the common messages or a parent.
+			MessageSourceMetrics metrics = getMetrics();
+			if (metrics != null) {
+				metrics.recordLookup(false);
+			}
 			return null;
 		}
-		if (locale == null) {
-			locale = Locale.getDefault();
+		String msg = super.getMessageInternal(code, args, locale);
+		if (msg == null && absentCodes.isCacheable()) {
+			if (absentCodes.isUpToDate()) {
+				if (absentCodes.codes.size() < MAX_ABSENT_CODES) {
+					absentCodes.codes.add(code);
+				}
+			}
+			else {
+				// Start over for the current state; misses from now on get recorded.
+				this.cachedAbsentCodes.replace(localeToUse, absentCodes, new AbsentCodes(this));
+			}
 		}
-		Object[] argsToUse = args;
+		return msg;
+	}
 
-		if (!isAlwaysUseMessageFormat() && (args == null || args.length == 0)) {
-			// Optimized resolution: no arguments to apply,
-			// therefore no MessageFormat needs to be involved.
-			// Note that the default implementation still uses MessageFormat;
-			// this can be overridden in specific subclasses.
-			String message = resolveCodeWithoutArguments(code, locale);
-			if (message != null) {
-				return message;
+
+	
+	/**
+	 * Return all messages visible for the given Locale: the bundles in
+	 * basename and fallback order, then the common messages, then the
+	 * messages of a parent that supports this method.
+	 * <p>The result is an unmodifiable view over the cached holders rather
+	 * than a copy; its contents are the ones current at the time of the call.
+	 */
+	@Override
+	public Properties getAllByLocale(Locale currentLocal) {
+		Locale locale = (currentLocal != null ? currentLocal : Locale.getDefault());
+		List<PropertiesHolder> layers = new ArrayList<PropertiesHolder>();
+		addOwnLayers(locale, layers);
+		MessageSource parent = getParentMessageSource();
+		if (parent instanceof I18nMesssageSupport) {
+			Properties parentMessages = ((I18nMesssageSupport) parent).getAllByLocale(locale);
+			if (parentMessages != null) {
+				layers.add(new PropertiesHolder(parentMessages, -1));
 			}
 		}
+		return new MergedMessagesView(layers.toArray(new PropertiesHolder[layers.size()]));
+	}
 
+	/**
+	 * Add the holders of this source's own messages for the given Locale,
+	 * i.e. its bundles in lookup order followed by its common messages.
+	 */
+	private void addOwnLayers(Locale locale, List<PropertiesHolder> layers) {
+		if (this.cacheMillis < 0) {
+			layers.add(getMergedProperties(locale));
+		}
 		else {
-			// Resolve arguments eagerly, for the case where the message
-			// is defined in a parent MessageSource but resolvable arguments
-			// are defined in the child MessageSource.
-			argsToUse = resolveArguments(args, locale);
-
-			MessageFormat messageFormat = resolveCode(code, locale);
-			if (messageFormat != null) {
-				synchronized (messageFormat) {
-					return messageFormat.format(argsToUse);
+			FallbackChain chain = getFallbackChain(locale);
+			for (int i = 0; i < chain.size(); i++) {
+				PropertiesHolder propHolder = getProperties(chain, i);
+				if (propHolder.hasProperties()) {
+					layers.add(propHolder);
 				}
 			}
 		}
-
-		// Check locale-independent common messages for the given message code.
 		Properties commonMessages = getCommonMessages();
 		if (commonMessages != null) {
-			String commonMessage = commonMessages.getProperty(code);
-			if (commonMessage != null) {
-				return formatMessage(commonMessage, args, locale);
+			layers.add(new PropertiesHolder(commonMessages, -1));
+		}
+	}
+
+	/**
+	 * Set whether to resolve messages against one flattened lookup layer per
+	 * Locale, holding the messages of this source and of all its
+	 * {@code ReLoaderI18nMessageSource} ancestors, child messages shadowing
+	 * parent messages. Default is "false".
+	 * <p>A miss then costs a single lookup instead of a full resolution per
+	 * level. The layer is rebuilt once any source in the hierarchy reloaded
+	 * a bundle file, had its common messages or parent replaced, or reached
+	 * its cache expiry. A first ancestor of another type is still asked
+	 * for codes missing from the layer.
+	 * <p>Messages of ancestors are formatted with the settings of this source.
+	 */
+	public void setFlattenHierarchy(boolean flattenHierarchy) {
+		this.flattenHierarchy = flattenHierarchy;
+		this.cachedFlattenedHierarchies.clear();
+		// Generations of flattened hierarchies aren't comparable to the properties generation.
+		clearRenderedMessages();
+	}
+
+	private String getFlattenedMessage(String code, Object[] args, Locale locale) {
+		FlattenedHierarchy hierarchy = getFlattenedHierarchy(locale);
+		String msg = null;
+		if (!isAlwaysUseMessageFormat() && (args == null || args.length == 0)) {
+			msg = hierarchy.messages.getProperty(code);
+		}
+		else {
+			MessageFormat messageFormat = hierarchy.messages.getMessageFormat(code, locale,
+					this.messageFormatCache, getMetrics());
+			if (messageFormat != null) {
+				msg = applyMessageFormat(code, hierarchy.generation, messageFormat, args, locale);
 			}
 		}
+		if (msg == null && hierarchy.tail != null) {
+			// Resolve nested resolvables here, as getMessageInternal would before asking a parent.
+			msg = getMessageFrom(hierarchy.tail, code, resolveArguments(args, locale), locale);
+		}
+		MessageSourceMetrics metrics = getMetrics();
+		if (metrics != null) {
+			metrics.recordLookup(msg != null);
+		}
+		return msg;
+	}
 
-		// Not found -> check parent, if any.
-		return getMessageFromParent(code, argsToUse, locale);
+	/**
+	 * Get the flattened lookup layer of the hierarchy for the given Locale,
+	 * rebuilding it once outdated.
+	 */
+	private FlattenedHierarchy getFlattenedHierarchy(Locale locale) {
+		FlattenedHierarchy hierarchy = this.cachedFlattenedHierarchies.get(locale);
+		if (hierarchy != null && hierarchy.isUpToDate()) {
+			return hierarchy;
+		}
+		// Take the state before reading the layers, so that a concurrent
+		// reload marks the result as outdated rather than getting lost.
+		hierarchy = new FlattenedHierarchy(HierarchyState.collectSources(this),
+				this.flattenedGeneration.incrementAndGet());
+		List<PropertiesHolder> layers = new ArrayList<PropertiesHolder>();
+		for (ReLoaderI18nMessageSource member : hierarchy.sources) {
+			member.addOwnLayers(locale, layers);
+		}
+		Map<String, String> messages = new HashMap<String, String>();
+		Iterator<Map.Entry<String, String>> entries =
+				new MergedMessagesView(layers.toArray(new PropertiesHolder[layers.size()])).entryIterator();
+		while (entries.hasNext()) {
+			Map.Entry<String, String> entry = entries.next();
+			messages.put(entry.getKey(), entry.getValue());
+		}
+		PropertiesHolder messagesHolder = new PropertiesHolder(Collections.unmodifiableMap(messages), -1);
+		hierarchy.messages = (this.compactStorage ? messagesHolder.compact() : messagesHolder);
+		this.cachedFlattenedHierarchies.put(locale, hierarchy);
+		return hierarchy;
 	}
 
+	/**
+	 * Return a sequential stream over all messages visible for the given
+	 * Locale, as {@link #getAllByLocale} would, iterating the bundles, common
+	 * messages and parent messages lazily instead of building a combined map.
+	 * @param locale the Locale
+	 */
+	public Stream<Map.Entry<String, String>> streamMessages(Locale locale) {
+		Iterator<Map.Entry<String, String>> entries = ((MergedMessagesView) getAllByLocale(locale)).entryIterator();
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entries,
+				Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+	}
 
-	
-	/* (non-Javadoc)
-	 * @see org.vsg.common.i18n.I18nMesssageSupport#getAllByLocale(java.util.Locale)
+	/**
+	 * Pass all messages visible for the given Locale to the given action.
+	 * @param locale the Locale
+	 * @param action the action to apply to each code and message
+	 * @see #streamMessages
 	 */
-	@Override
-	public Properties getAllByLocale(Locale currentLocal) {
-		// TODO Auto-generated method stub
-		return null;
+	public void forEachMessage(Locale locale, BiConsumer<String, String> action) {
+		Iterator<Map.Entry<String, String>> entries = ((MergedMessagesView) getAllByLocale(locale)).entryIterator();
+		while (entries.hasNext()) {
+			Map.Entry<String, String> entry = entries.next();
+			action.accept(entry.getKey(), entry.getValue());
+		}
 	}
 	
 	/**
@@ -196,33 +581,68 @@ public abstract class ReLoaderI18nMessageSource extends AbstractMessageSource im
 	 * <p>Only used when caching resource bundle contents forever, i.e.
 	 * with cacheSeconds < 0. Therefore, merged properties are always
 	 * cached forever.
+	 * <p>Cache hits are lock-free. Concurrent first requests for the same
+	 * Locale may merge in parallel, but share the single-flight loading of
+	 * each underlying file and agree on one published holder.
 	 */
 	protected PropertiesHolder getMergedProperties(Locale locale) {
-		synchronized (this.cachedMergedProperties) {
-			PropertiesHolder mergedHolder = this.cachedMergedProperties.get(locale);
-			if (mergedHolder != null) {
-				return mergedHolder;
+		checkDefaultLocale();
+		PropertiesHolder mergedHolder = this.cachedMergedProperties.get(locale);
+		if (mergedHolder != null) {
+			return mergedHolder;
+		}
+		while (true) {
+			long generation = this.propertiesGeneration.get();
+			mergedHolder = mergeProperties(locale);
+			PropertiesHolder existing = this.cachedMergedProperties.putIfAbsent(locale, mergedHolder);
+			if (existing != null) {
+				return existing;
 			}
-			Properties mergedProps = new Properties();
-			mergedHolder = new PropertiesHolder(mergedProps, -1);
-			for (int i = this.basenames.length - 1; i >= 0; i--) {
-				List<String> filenames = calculateAllFilenames(this.basenames[i], locale);
-				for (int j = filenames.size() - 1; j >= 0; j--) {
-					String filename = filenames.get(j);
-					
-					
-					PropertiesHolder propHolder = getProperties(filename);
-					
-					System.out.println(propHolder + " , " + filename);
-					
-					if (propHolder.getProperties() != null) {
-						mergedProps.putAll(propHolder.getProperties());
-					}
-				}
+			if (generation == this.propertiesGeneration.get()) {
+				return mergedHolder;
 			}
-			this.cachedMergedProperties.put(locale, mergedHolder);
-			return mergedHolder;
+			// A bundle file got replaced while merging: don't keep a stale view.
+			this.cachedMergedProperties.remove(locale, mergedHolder);
+		}
+	}
+
+	/**
+	 * Merge the bundle files of the fallback chain for the given Locale
+	 * into a new holder, without caching it.
+	 */
+	private PropertiesHolder mergeProperties(Locale locale) {
+		Map<String, String> mergedMessages = new HashMap<String, String>();
+		FallbackChain chain = getFallbackChain(locale);
+		for (int i = chain.size() - 1; i >= 0; i--) {
+			getProperties(chain, i).copyTo(mergedMessages);
+		}
+		if (this.compactStorage) {
+			return new PropertiesHolder(MessageArena.build(mergedMessages), -1);
+		}
+		return new PropertiesHolder(Collections.unmodifiableMap(mergedMessages), -1);
+	}
+
+	/**
+	 * Replace the cached holder for the given bundle file, e.g. after the
+	 * file was changed, and rebuild the merged views that were cached so
+	 * far on the calling thread. Lookups keep being served from the
+	 * previous views until the new ones are published.
+	 * @param filename the bundle filename (basename + Locale)
+	 * @param propHolder the new holder for the bundle file
+	 */
+	protected void updateProperties(String filename, PropertiesHolder propHolder) {
+		if (this.compactStorage) {
+			propHolder = propHolder.compact();
+		}
+		this.cachedProperties.put(filename, propHolder);
+		this.propertiesGeneration.incrementAndGet();
+		for (Locale locale : this.cachedMergedProperties.keySet()) {
+			this.cachedMergedProperties.put(locale, mergeProperties(locale));
 		}
+		this.messageTable.set(new String[0][]);
+		// Lookups that took the generation before the merged views got
+		// updated must not cache what they resolve under the new one.
+		this.propertiesGeneration.incrementAndGet();
 	}
 
 	
@@ -231,113 +651,353 @@ public abstract class ReLoaderI18nMessageSource extends AbstractMessageSource im
 	 * using a cached MessageFormat instance per message code.
 	 */
 	protected MessageFormat resolveCode(String code, Locale locale) {
+		MessageSourceMetrics metrics = getMetrics();
+		MessageFormat result = null;
 		if (this.cacheMillis < 0) {
 			PropertiesHolder propHolder = getMergedProperties(locale);
-			MessageFormat result = propHolder.getMessageFormat(code, locale);
-			if (result != null) {
-				return result;
-			}
+			result = propHolder.getMessageFormat(code, locale, this.messageFormatCache, metrics);
 		}
 		else {
-			for (String basename : this.basenames) {
-				List<String> filenames = calculateAllFilenames(basename, locale);
-				for (String filename : filenames) {
-					PropertiesHolder propHolder = getProperties(filename);
-					MessageFormat result = propHolder.getMessageFormat(code, locale);
-					if (result != null) {
-						return result;
-					} else {
-						propHolder = getResourceProperties(filename);
-						System.out.println("out holder : " + propHolder);
-					}
-				}
+			FallbackChain chain = getFallbackChain(locale);
+			for (int i = 0; i < chain.size() && result == null; i++) {
+				result = getProperties(chain, i).getMessageFormat(code, locale, this.messageFormatCache, metrics);
 			}
 		}
-		return null;
+		if (metrics != null) {
+			metrics.recordResolve(result != null);
+		}
+		return result;
 	}	
 	
 	protected String resolveCodeWithoutArguments(String code, Locale locale) {
-		// --- read message first ---
-
+		String result = null;
 		if (this.cacheMillis < 0) {
-			PropertiesHolder propHolder = getMergedResourceProperties(locale);
-			String result = propHolder.getProperty(code);
-			if (result != null) {
-				return result;
-			}
+			PropertiesHolder propHolder = getMergedProperties(locale);
+			result = propHolder.getProperty(code);
 		}
 		else {
-
-			for (String basename : this.basenames) {
-				List<String> filenames = calculateAllFilenames(basename, locale);
-				
-				
-				for (String filename : filenames) {
-					
-					PropertiesHolder propHolder = getProperties(filename);
-					String result = propHolder.getProperty(code);
-					System.out.println(filename);
-					if (result != null) {
-						return result;
-					} else {
-						// --- read another properties holder --- 
-						propHolder = getResourceProperties(filename);
-						System.out.println(propHolder);
-						result = propHolder.getProperty(code);
-						
-						if ( result != null) {
-							return result;
-						}
-						
-					}
-				}
+			FallbackChain chain = getFallbackChain(locale);
+			for (int i = 0; i < chain.size() && result == null; i++) {
+				result = getProperties(chain, i).getProperty(code);
 			}
-		
-		
-			
 		}
-		return null;
+		MessageSourceMetrics metrics = getMetrics();
+		if (metrics != null) {
+			metrics.recordResolve(result != null);
+		}
+		return result;
 	}	
 	
-	private final Map<Locale, PropertiesHolder> cachedMergedProperties = new HashMap<Locale, PropertiesHolder>();	
+	private final ConcurrentMap<Locale, PropertiesHolder> cachedMergedProperties =
+			new ConcurrentHashMap<Locale, PropertiesHolder>();
 	
-	private final Map<String, Map<Locale, List<String>>> cachedFilenames =
-			new HashMap<String, Map<Locale, List<String>>>();	
+	private final ConcurrentMap<String, ConcurrentMap<Locale, List<String>>> cachedFilenames =
+			new ConcurrentHashMap<String, ConcurrentMap<Locale, List<String>>>();
+
+	private final ConcurrentMap<Locale, FallbackChain> cachedFallbackChains =
+			new ConcurrentHashMap<Locale, FallbackChain>();
+
+	/** Default Locale the cached filenames and fallback chains were calculated for */
+	private volatile Locale fallbackDefaultLocale = Locale.getDefault();
+
+	private boolean flattenHierarchy = false;
+
+	/** Flattened lookup layers of the hierarchy per Locale, in flattened hierarchy mode */
+	private final ConcurrentMap<Locale, FlattenedHierarchy> cachedFlattenedHierarchies =
+			new ConcurrentHashMap<Locale, FlattenedHierarchy>();
+
+	/** Codes found absent per Locale, in this source and its ancestors */
+	private final ConcurrentMap<Locale, AbsentCodes> cachedAbsentCodes =
+			new ConcurrentHashMap<Locale, AbsentCodes>();
+
+	/**
+	 * Incremented whenever the cached holder of a bundle file gets replaced,
+	 * and once more after the merged views are updated accordingly, as well
+	 * as whenever the bundle files to look up change
+	 */
+	private final AtomicLong propertiesGeneration = new AtomicLong();
+
+	/** Last generation given to a flattened hierarchy */
+	private final AtomicLong flattenedGeneration = new AtomicLong();
+
+	private volatile Executor refreshExecutor;
+
+	/** Loads currently in flight per filename, so that each file is parsed by one thread only */
+	private final ConcurrentMap<String, FutureTask<PropertiesHolder>> loadingProperties =
+			new ConcurrentHashMap<String, FutureTask<PropertiesHolder>>();
+
+	private Executor preloadExecutor;
+
+	private Collection<Locale> preloadLocales;
+
+	private boolean precompileMessageFormats = false;
 
 	/**
 	 * Get a PropertiesHolder for the given filename, either from the
 	 * cache or freshly loaded.
+	 * <p>Up-to-date holders are returned without locking. On a miss, exactly
+	 * one caller per filename loads the file; concurrent callers for the same
+	 * filename wait for its result, while loads of different filenames proceed
+	 * in parallel. An expired holder keeps being returned while a single
+	 * revalidation runs in the background on the refresh executor.
 	 * @param filename the bundle filename (basename + Locale)
 	 * @return the current PropertiesHolder for the bundle
+	 * @see #setRefreshExecutor
 	 */
 	protected PropertiesHolder getProperties(String filename) {
-		synchronized (this.cachedProperties) {
-			PropertiesHolder propHolder = this.cachedProperties.get(filename);
-			if (propHolder != null &&
-					(propHolder.getRefreshTimestamp() < 0 ||
-					 propHolder.getRefreshTimestamp() > System.currentTimeMillis() - this.cacheMillis)) {
-				// up to date
-				return propHolder;
-			}
-			return refreshProperties(filename, propHolder);
+		PropertiesHolder propHolder = this.cachedProperties.get(filename);
+		if (isUpToDate(propHolder)) {
+			return propHolder;
 		}
+		if (propHolder != null) {
+			revalidateInBackground(filename, propHolder);
+			return propHolder;
+		}
+		return refreshPropertiesOnce(filename, null);
 	}	
+
+	/**
+	 * Get the PropertiesHolder for the file at the given position of a
+	 * fallback chain, reusing the holder resolved last time unless expired
+	 * or resolved before a bundle file got replaced.
+	 */
+	PropertiesHolder getProperties(FallbackChain chain, int index) {
+		long generation = this.propertiesGeneration.get();
+		PropertiesHolder propHolder = chain.getHolder(index, generation);
+		if (isUpToDate(propHolder)) {
+			return propHolder;
+		}
+		propHolder = getProperties(chain.getFilename(index));
+		chain.setHolder(index, propHolder, generation);
+		return propHolder;
+	}
+
+	/**
+	 * Resolves the given message codes against the merged view, or the
+	 * fallback chain, of the given Locale, fetched once for the whole batch.
+	 */
+	@Override
+	protected void resolveCodesWithoutArguments(Collection<String> codes, Locale locale, Map<String, String> messages) {
+		MessageSourceMetrics metrics = getMetrics();
+		if (this.cacheMillis < 0) {
+			PropertiesHolder propHolder = getMergedProperties(locale);
+			for (String code : codes) {
+				if (code != null) {
+					String result = propHolder.getProperty(code);
+					if (result != null) {
+						messages.put(code, result);
+					}
+					if (metrics != null) {
+						metrics.recordResolve(result != null);
+					}
+				}
+			}
+		}
+		else {
+			FallbackChain chain = getFallbackChain(locale);
+			PropertiesHolder[] propHolders = new PropertiesHolder[chain.size()];
+			for (int i = 0; i < chain.size(); i++) {
+				propHolders[i] = getProperties(chain, i);
+			}
+			for (String code : codes) {
+				if (code != null) {
+					String result = null;
+					for (int i = 0; i < propHolders.length && result == null; i++) {
+						result = propHolders[i].getProperty(code);
+					}
+					if (result != null) {
+						messages.put(code, result);
+					}
+					if (metrics != null) {
+						metrics.recordResolve(result != null);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the fallback chain of bundle files for the given Locale across
+	 * all basenames, calculating it on first use.
+	 * <p>The chain is kept until the basenames or the system Locale change;
+	 * reloading bundle files only makes it re-resolve its holders.
+	 * @param locale the Locale
+	 * @return the chain, in lookup order
+	 * @see #calculateAllFilenames
+	 */
+	FallbackChain getFallbackChain(Locale locale) {
+		checkDefaultLocale();
+		FallbackChain chain = this.cachedFallbackChains.get(locale);
+		if (chain != null) {
+			return chain;
+		}
+		List<String> filenames = new ArrayList<String>();
+		for (String basename : this.basenames) {
+			filenames.addAll(calculateAllFilenames(basename, locale));
+		}
+		chain = new FallbackChain(filenames.toArray(new String[filenames.size()]));
+		FallbackChain existing = this.cachedFallbackChains.putIfAbsent(locale, chain);
+		return (existing != null ? existing : chain);
+	}
+
+	/**
+	 * Drop calculated filenames and everything merged from them once the
+	 * system Locale they fall back to has changed.
+	 */
+	private void checkDefaultLocale() {
+		Locale defaultLocale = Locale.getDefault();
+		if (!defaultLocale.equals(this.fallbackDefaultLocale)) {
+			this.fallbackDefaultLocale = defaultLocale;
+			this.cachedFilenames.clear();
+			clearMergedProperties();
+		}
+	}
+
+	private boolean isUpToDate(PropertiesHolder propHolder) {
+		return (propHolder != null &&
+				(propHolder.getRefreshTimestamp() < 0 ||
+				 propHolder.getRefreshTimestamp() > System.currentTimeMillis() - this.cacheMillis));
+	}
+
+	private FutureTask<PropertiesHolder> newRefreshTask(final String filename, final PropertiesHolder propHolder) {
+		return new FutureTask<PropertiesHolder>(new Callable<PropertiesHolder>() {
+			@Override
+			public PropertiesHolder call() {
+				// Another thread may have finished the refresh between our cache
+				// check and the registration of this task.
+				PropertiesHolder current = cachedProperties.get(filename);
+				if (current != propHolder && isUpToDate(current)) {
+					return current;
+				}
+				return refreshProperties(filename, current);
+			}
+		});
+	}
+
+	private void revalidateInBackground(final String filename, PropertiesHolder propHolder) {
+		if (this.loadingProperties.containsKey(filename)) {
+			return;
+		}
+		final FutureTask<PropertiesHolder> task = newRefreshTask(filename, propHolder);
+		if (this.loadingProperties.putIfAbsent(filename, task) != null) {
+			return;
+		}
+		try {
+			getRefreshExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run();
+					}
+					finally {
+						loadingProperties.remove(filename, task);
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException ex) {
+			this.loadingProperties.remove(filename, task);
+			if (logger.isWarnEnabled()) {
+				logger.warn("Could not schedule refresh of properties [" + filename + "]", ex);
+			}
+		}
+	}
+
+	private PropertiesHolder refreshPropertiesOnce(String filename, PropertiesHolder propHolder) {
+		FutureTask<PropertiesHolder> task = newRefreshTask(filename, propHolder);
+		FutureTask<PropertiesHolder> loading = this.loadingProperties.putIfAbsent(filename, task);
+		if (loading == null) {
+			loading = task;
+			try {
+				task.run();
+			}
+			finally {
+				this.loadingProperties.remove(filename, task);
+			}
+		}
+		try {
+			return loading.get();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return (propHolder != null ? propHolder : new PropertiesHolder());
+		}
+		catch (ExecutionException ex) {
+			throw rethrow(ex, "Could not load properties [" + filename + "]");
+		}
+	}
+
+	/**
+	 * Rethrow the cause of the given exception if unchecked, or else wrap it.
+	 */
+	private static RuntimeException rethrow(ExecutionException ex, String message) {
+		Throwable cause = ex.getCause();
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		throw new IllegalStateException(message, cause);
+	}
 	
 
 	/**
 	 * Refresh the PropertiesHolder for the given bundle filename.
 	 * The holder can be {@code null} if not cached before, or a timed-out cache entry
 	 * (potentially getting re-validated against the current last-modified timestamp).
+	 * <p>An expired holder whose file still has the last-modified timestamp
+	 * recorded at load time is kept and just marked as refreshed, without
+	 * parsing the file again.
+	 * <p>Invoked by at most one thread per filename at a time.
 	 * @param filename the bundle filename (basename + Locale)
 	 * @param propHolder the current PropertiesHolder for the bundle
+	 * @see #getLastModified
 	 */
 	protected PropertiesHolder refreshProperties(String filename, PropertiesHolder propHolder) {
 		long refreshTimestamp = (this.cacheMillis < 0 ? -1 : System.currentTimeMillis());
 
-		this.cachedProperties.put(filename, propHolder);
-		return propHolder;
+		if (propHolder != null && propHolder.getFileTimestamp() > 0 &&
+				getLastModified(filename) == propHolder.getFileTimestamp()) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Re-caching properties for filename [" + filename + "] - file hasn't been modified");
+			}
+			propHolder.setRefreshTimestamp(refreshTimestamp);
+			return propHolder;
+		}
+
+		PropertiesHolder refreshed = loadResourceProperties(filename, propHolder);
+		if (refreshed == null) {
+			// No such bundle file: cache an empty holder so the lookup isn't repeated.
+			refreshed = new PropertiesHolder();
+		}
+		else if (this.compactStorage && refreshed != propHolder) {
+			refreshed = refreshed.compact();
+		}
+		refreshed.setRefreshTimestamp(refreshTimestamp);
+		this.cachedProperties.put(filename, refreshed);
+		if (propHolder != null && refreshed != propHolder) {
+			this.propertiesGeneration.incrementAndGet();
+		}
+		return refreshed;
 	}	
 	
+	/**
+	 * Invoke {@link #refreshResourceProperties}, recording the load in the
+	 * metrics, if any.
+	 */
+	PropertiesHolder loadResourceProperties(String filename, PropertiesHolder propHolder) {
+		MessageSourceMetrics metrics = getMetrics();
+		if (metrics == null) {
+			return refreshResourceProperties(filename, propHolder);
+		}
+		long start = System.nanoTime();
+		PropertiesHolder refreshed = refreshResourceProperties(filename, propHolder);
+		metrics.recordLoad(filename, refreshed != null && refreshed != propHolder && refreshed.hasProperties(),
+				System.nanoTime() - start);
+		return refreshed;
+	}
+
 	/**
 	 * Calculate all filenames for the given bundle basename and Locale.
 	 * Will calculate filenames for the given Locale, the system Locale
@@ -349,54 +1009,36 @@ public abstract class ReLoaderI18nMessageSource extends AbstractMessageSource im
 	 * @see #calculateFilenamesForLocale
 	 */
 	protected List<String> calculateAllFilenames(String basename, Locale locale) {
-		synchronized (this.cachedFilenames) {
-			Map<Locale, List<String>> localeMap = this.cachedFilenames.get(basename);
-			if (localeMap != null) {
-				List<String> filenames = localeMap.get(locale);
-				if (filenames != null) {
-					return filenames;
-				}
+		ConcurrentMap<Locale, List<String>> localeMap = this.cachedFilenames.get(basename);
+		if (localeMap != null) {
+			List<String> filenames = localeMap.get(locale);
+			if (filenames != null) {
+				return filenames;
 			}
-			List<String> filenames = new ArrayList<String>(7);
-			filenames.addAll(calculateFilenamesForLocale(basename, locale));
-			if (this.fallbackToSystemLocale && !locale.equals(Locale.getDefault())) {
-				List<String> fallbackFilenames = calculateFilenamesForLocale(basename, Locale.getDefault());
-				for (String fallbackFilename : fallbackFilenames) {
-					if (!filenames.contains(fallbackFilename)) {
-						// Entry for fallback locale that isn't already in filenames list.
-						filenames.add(fallbackFilename);
-					}
+		}
+		List<String> filenames = new ArrayList<String>(7);
+		filenames.addAll(calculateFilenamesForLocale(basename, locale));
+		if (this.fallbackToSystemLocale && !locale.equals(Locale.getDefault())) {
+			List<String> fallbackFilenames = calculateFilenamesForLocale(basename, Locale.getDefault());
+			for (String fallbackFilename : fallbackFilenames) {
+				if (!filenames.contains(fallbackFilename)) {
+					// Entry for fallback locale that isn't already in filenames list.
+					filenames.add(fallbackFilename);
 				}
 			}
-			filenames.add(basename);
-			if (localeMap != null) {
-				localeMap.put(locale, filenames);
-			}
-			else {
-				localeMap = new HashMap<Locale, List<String>>();
-				localeMap.put(locale, filenames);
-				this.cachedFilenames.put(basename, localeMap);
-			}
-			return filenames;
 		}
-	}	
-	
-	private  PropertiesHolder getResourceProperties(String filename) {
-
-		synchronized (this.cachedProperties) {
-			PropertiesHolder propHolder = this.cachedProperties.get(filename);
-			if (propHolder != null &&
-					(propHolder.getRefreshTimestamp() < 0 ||
-					 propHolder.getRefreshTimestamp() > System.currentTimeMillis() - this.cacheMillis)) {
-				// up to date
-				return propHolder;
+		filenames.add(basename);
+		filenames = Collections.unmodifiableList(filenames);
+		if (localeMap == null) {
+			localeMap = new ConcurrentHashMap<Locale, List<String>>();
+			ConcurrentMap<Locale, List<String>> existing = this.cachedFilenames.putIfAbsent(basename, localeMap);
+			if (existing != null) {
+				localeMap = existing;
 			}
-			
-			PropertiesHolder holder = refreshResourceProperties(filename, propHolder);
-			
-			return holder;
 		}
-	}
+		List<String> existing = localeMap.putIfAbsent(locale, filenames);
+		return (existing != null ? existing : filenames);
+	}	
 	
 	/**
 	 * Refresh the PropertiesHolder for the given bundle filename.
@@ -404,43 +1046,211 @@ public abstract class ReLoaderI18nMessageSource extends AbstractMessageSource im
 	 * (potentially getting re-validated against the current last-modified timestamp).
 	 * @param filename the bundle filename (basename + Locale)
 	 * @param propHolder the current PropertiesHolder for the bundle
+	 * @return the refreshed holder, or {@code null} if the bundle does not exist
 	 */
 	abstract PropertiesHolder refreshResourceProperties(String filename, PropertiesHolder propHolder);
 
-	
-	
-	private PropertiesHolder getMergedResourceProperties(Locale locale) {
-		synchronized (this.cachedMergedProperties) {
-			PropertiesHolder mergedHolder = this.cachedMergedProperties.get(locale);
-			if (mergedHolder != null) {
-				return mergedHolder;
+	/**
+	 * Return the current last-modified timestamp of the given bundle file,
+	 * to be compared with {@link PropertiesHolder#getFileTimestamp()} before
+	 * reloading it.
+	 * <p>The default implementation returns -1, i.e. unknown, in which case
+	 * expired bundle files are always parsed again.
+	 * @param filename the bundle filename (basename + Locale)
+	 * @return the timestamp, or -1 if unknown or the file does not exist
+	 */
+	protected long getLastModified(String filename) {
+		return -1;
+	}
+
+	/**
+	 * Set the number of milliseconds to cache loaded bundle files.
+	 * <ul>
+	 * <li>Default is "-1", indicating to cache forever.
+	 * <li>A positive number will cache loaded bundle files for the given
+	 * number of milliseconds. Expired files keep being served while their
+	 * last-modified timestamp is checked in the background, and are only
+	 * parsed again if modified.
+	 * <li>A value of "0" will check the last-modified timestamp of the file
+	 * on every message access.
+	 * </ul>
+	 */
+	public void setCacheMillis(long cacheMillis) {
+		this.cacheMillis = cacheMillis;
+		clearMergedProperties();
+	}
+
+	/**
+	 * Set the Executor to revalidate expired bundle files on.
+	 * <p>Default is a cached pool of daemon threads, created on first use.
+	 */
+	public void setRefreshExecutor(Executor refreshExecutor) {
+		this.refreshExecutor = refreshExecutor;
+	}
+
+	/**
+	 * Set the Executor to run the tasks of {@link #preload} on.
+	 * <p>Default is the common {@link ForkJoinPool}.
+	 */
+	public void setPreloadExecutor(Executor preloadExecutor) {
+		this.preloadExecutor = preloadExecutor;
+	}
+
+	/**
+	 * Set the Locales to preload on {@link #warmUp}.
+	 * <p>Default is the system Locale only.
+	 */
+	public void setPreloadLocales(Collection<Locale> preloadLocales) {
+		this.preloadLocales = preloadLocales;
+	}
+
+	/**
+	 * Set whether {@link #preload} also compiles the message template of
+	 * every code visible for each Locale. Default is "false".
+	 */
+	public void setPrecompileMessageFormats(boolean precompileMessageFormats) {
+		this.precompileMessageFormats = precompileMessageFormats;
+	}
+
+	/**
+	 * Preload the configured Locales.
+	 * @see #setPreloadLocales
+	 * @see #preload
+	 */
+	public PreloadStats warmUp() {
+		Collection<Locale> locales = this.preloadLocales;
+		return preload(locales != null ? locales : Collections.singleton(Locale.getDefault()));
+	}
+
+	/**
+	 * Load every bundle file in the fallback chains of all basenames for the
+	 * given Locales, then build their merged views, and optionally compile
+	 * all message templates, so that no request has to pay for it.
+	 * <p>Each step runs in parallel on the preload Executor; the calling
+	 * thread waits until all are done, e.g. before an instance is marked ready.
+	 * @param locales the Locales to preload
+	 * @return the timing stats of this preload
+	 * @see #setPreloadExecutor
+	 * @see #setPrecompileMessageFormats
+	 */
+	public PreloadStats preload(Collection<Locale> locales) {
+		Executor executor = (this.preloadExecutor != null ? this.preloadExecutor : ForkJoinPool.commonPool());
+		Set<Locale> allLocales = new LinkedHashSet<Locale>(locales);
+
+		long start = System.nanoTime();
+		Set<String> filenames = new LinkedHashSet<String>();
+		for (Locale locale : allLocales) {
+			FallbackChain chain = getFallbackChain(locale);
+			for (int i = 0; i < chain.size(); i++) {
+				filenames.add(chain.getFilename(i));
 			}
-			Properties mergedProps = new Properties();
-			mergedHolder = new PropertiesHolder(mergedProps, -1);
-			
-			// --- update merge resource ---
-			for (int i = this.basenames.length - 1; i >= 0; i--) {
-				List<String> filenames = calculateAllFilenames(this.basenames[i], locale);
-				for (String filename : filenames) {
-					if (!filename.endsWith(locale.toString())) {
-						continue;
-					}
-					
-					PropertiesHolder propHolder = getProperties(filename);
-					
-					if (null == propHolder) {
-						propHolder = getResourceProperties(filename);
+		}
+		List<FutureTask<PropertiesHolder>> loads = new ArrayList<FutureTask<PropertiesHolder>>(filenames.size());
+		for (final String filename : filenames) {
+			loads.add(submit(executor, new Callable<PropertiesHolder>() {
+				@Override
+				public PropertiesHolder call() {
+					return getProperties(filename);
+				}
+			}));
+		}
+		int loadedFileCount = 0;
+		for (FutureTask<PropertiesHolder> load : loads) {
+			if (await(load).hasProperties()) {
+				loadedFileCount++;
+			}
+		}
+
+		long loaded = System.nanoTime();
+		List<FutureTask<Integer>> merges = new ArrayList<FutureTask<Integer>>(allLocales.size());
+		for (final Locale locale : allLocales) {
+			merges.add(submit(executor, new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					return getVisibleCodes(locale).size();
+				}
+			}));
+		}
+		for (FutureTask<Integer> merge : merges) {
+			await(merge);
+		}
+
+		long merged = System.nanoTime();
+		int messageFormatCount = 0;
+		if (this.precompileMessageFormats) {
+			List<FutureTask<Integer>> compiles = new ArrayList<FutureTask<Integer>>(allLocales.size());
+			for (final Locale locale : allLocales) {
+				compiles.add(submit(executor, new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						int count = 0;
+						for (String code : getVisibleCodes(locale)) {
+							if (resolveCode(code, locale) != null) {
+								count++;
+							}
+						}
+						return count;
 					}
-					if (propHolder != null && propHolder.getProperties() != null) {
-						mergedProps.putAll(propHolder.getProperties());
-					}					
+				}));
+			}
+			for (FutureTask<Integer> compile : compiles) {
+				messageFormatCount += await(compile);
+			}
+		}
+		long compiled = System.nanoTime();
+
+		PreloadStats stats = new PreloadStats(allLocales.size(), filenames.size(), loadedFileCount, messageFormatCount,
+				TimeUnit.NANOSECONDS.toMillis(loaded - start), TimeUnit.NANOSECONDS.toMillis(merged - loaded),
+				TimeUnit.NANOSECONDS.toMillis(compiled - merged));
+		if (logger.isInfoEnabled()) {
+			logger.info("Preloaded message bundles: " + stats);
+		}
+		return stats;
+	}
+
+	private static <T> FutureTask<T> submit(Executor executor, Callable<T> callable) {
+		FutureTask<T> task = new FutureTask<T>(callable);
+		executor.execute(task);
+		return task;
+	}
+
+	private static <T> T await(FutureTask<T> task) {
+		try {
+			return task.get();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while preloading message bundles", ex);
+		}
+		catch (ExecutionException ex) {
+			throw rethrow(ex, "Could not preload message bundles");
+		}
+	}
 
+	protected Executor getRefreshExecutor() {
+		Executor executor = this.refreshExecutor;
+		if (executor == null) {
+			this.keysLock.lock();
+			try {
+				if (this.refreshExecutor == null) {
+					this.refreshExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "i18n-refresh");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
 				}
+				executor = this.refreshExecutor;
+			}
+			finally {
+				this.keysLock.unlock();
 			}
-			this.cachedMergedProperties.put(locale, mergedHolder);
-			return mergedHolder;
 		}
+		return executor;
 	}
+
 	
 	protected List<String> calculateFilenamesForLocale(String basename, Locale locale) {
 		List<String> result = new ArrayList<String>(3);
@@ -469,43 +1279,66 @@ public abstract class ReLoaderI18nMessageSource extends AbstractMessageSource im
 		return result;
 	}
 	
-	private Map<String, Map<Locale, List<String>>> cachedResourceNames = new LinkedHashMap<String, Map<Locale, List<String>>>();;
-	
 	private boolean fallbackToSystemLocale = true;
+
+	private boolean compactStorage = false;
+
+	private volatile MessageFormatCache messageFormatCache = new MessageFormatCache(DEFAULT_MESSAGE_FORMAT_CACHE_WEIGHT);
+
+	/**
+	 * Set the maximum total weight of the cache of MessageFormats compiled
+	 * from bundle messages, the weight of a format being the length of its
+	 * message text. Default is {@link #DEFAULT_MESSAGE_FORMAT_CACHE_WEIGHT}.
+	 * <p>Frequently used formats stay compiled; rarely used ones are evicted
+	 * and compiled again on demand. Replaces the current cache.
+	 */
+	public void setMessageFormatCacheWeight(long maximumWeight) {
+		this.messageFormatCache = new MessageFormatCache(maximumWeight);
+	}
+
+	/**
+	 * Return hit, miss and eviction statistics of the MessageFormat cache.
+	 * @see #setMessageFormatCacheWeight
+	 */
+	public CacheStats getMessageFormatCacheStats() {
+		return this.messageFormatCache.getStats();
+	}
+
+	/**
+	 * Set whether to keep the messages of each bundle file and merged view
+	 * packed as UTF-8 in a single byte array, decoding texts on access,
+	 * rather than as {@code Properties}. Saves most of the per-message heap
+	 * at the cost of decoding messages that are not hot. Default is "false".
+	 * <p>Applies to bundle files loaded afterwards; merged views are rebuilt.
+	 */
+	public void setCompactStorage(boolean compactStorage) {
+		this.compactStorage = compactStorage;
+		clearMergedProperties();
+	}
+
+	/**
+	 * Set whether to fall back to the system Locale if no files for a specific
+	 * Locale have been found. Default is "true"; if this is turned off, the only
+	 * fallback will be the default file (e.g. "messages.properties" for
+	 * basename "messages").
+	 */
+	public void setFallbackToSystemLocale(boolean fallbackToSystemLocale) {
+		this.fallbackToSystemLocale = fallbackToSystemLocale;
+		this.cachedFilenames.clear();
+		clearMergedProperties();
+	}
+
+	/**
+	 * Return whether to fall back to the system Locale if no files for a
+	 * specific Locale have been found.
+	 */
+	public boolean isFallbackToSystemLocale() {
+		return this.fallbackToSystemLocale;
+	}
 	
 	
 	public List<String> calculateAllFilenamesToResource(String basename, Locale locale) {
-
-		synchronized (this.cachedResourceNames) {
-			Map<Locale, List<String>> localeMap = this.cachedResourceNames.get(basename);
-			if (localeMap != null) {
-				List<String> filenames = localeMap.get(locale);
-				if (filenames != null) {
-					return filenames;
-				}
-			}
-			List<String> filenames = new ArrayList<String>(7);
-			filenames.addAll(calculateFilenamesForLocale(basename, locale));
-			if (this.fallbackToSystemLocale && !locale.equals(Locale.getDefault())) {
-				List<String> fallbackFilenames = calculateFilenamesForLocale(basename, Locale.getDefault());
-				for (String fallbackFilename : fallbackFilenames) {
-					if (!filenames.contains(fallbackFilename)) {
-						// Entry for fallback locale that isn't already in filenames list.
-						filenames.add(fallbackFilename);
-					}
-				}
-			}
-			filenames.add(basename);
-			if (localeMap != null) {
-				localeMap.put(locale, filenames);
-			}
-			else {
-				localeMap = new HashMap<Locale, List<String>>();
-				localeMap.put(locale, filenames);
-				this.cachedResourceNames.put(basename, localeMap);
-			}
-			return filenames;
-		}
+		return calculateAllFilenames(basename, locale);
 	}		
 	
 	private String findMatchfilename(String filename) {
@@ -526,9 +1359,17 @@ public abstract class ReLoaderI18nMessageSource extends AbstractMessageSource im
 		
 	}
 	
-	protected Properties loadProperties(URL resource, String filename) throws IOException {
-		Properties props = new Properties();
-		InputStream is = resource.openStream();
+	/**
+	 * Set the PropertiesPersister to use for parsing properties files.
+	 * <p>The default is a {@link StreamingPropertiesPersister}, which
+	 * {@link #loadMessages} uses to parse without intermediate {@code Properties}.
+	 */
+	public void setPropertiesPersister(PropertiesPersister propertiesPersister) {
+		this.propertiesPersister =
+				(propertiesPersister != null ? propertiesPersister : new StreamingPropertiesPersister());
+	}
+
+	private String getEncoding() {
 		String encoding = null;
 		if (this.fileEncodings != null) {
 			encoding = "UTF-8";
@@ -536,20 +1377,230 @@ public abstract class ReLoaderI18nMessageSource extends AbstractMessageSource im
 		if (encoding == null) {
 			encoding = this.defaultEncoding;
 		}
-		if (encoding != null) {
-			if (logger.isDebugEnabled()) {
-				logger.debug("Loading properties [" + resource + "] with encoding '" + encoding + "'");
+		return encoding;
+	}
+
+	protected Properties loadProperties(URL resource, String filename) throws IOException {
+		Properties props = new Properties();
+		InputStream is = resource.openStream();
+		try {
+			String encoding = getEncoding();
+			if (encoding != null) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Loading properties [" + resource + "] with encoding '" + encoding + "'");
+				}
+				this.propertiesPersister.load(props, new InputStreamReader(is, encoding));
 			}
-			this.propertiesPersister.load(props, new InputStreamReader(is, encoding));
-		}
-		else {
-			if (logger.isDebugEnabled()) {
-				logger.debug("Loading properties [" + resource + "]");
+			else {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Loading properties [" + resource + "]");
+				}
+				this.propertiesPersister.load(props, is);
 			}
-			this.propertiesPersister.load(props, is);
+		}
+		finally {
+			is.close();
 		}
 		return props;
 		
 	}
 
+	/**
+	 * Load the messages of the given properties file into an unmodifiable map.
+	 * <p>With a {@link StreamingPropertiesPersister}, the file is parsed from
+	 * a channel straight into the map; otherwise this copies the result of
+	 * {@link #loadProperties}.
+	 * @param resource the properties file
+	 * @param filename the bundle file name, e.g. "i18n/message_zh_CN.properties"
+	 * @throws IOException in case of I/O errors
+	 */
+	protected Map<String, String> loadMessages(URL resource, String filename) throws IOException {
+		final Map<String, String> messages = new HashMap<String, String>();
+		if (!(this.propertiesPersister instanceof StreamingPropertiesPersister)) {
+			Properties props = loadProperties(resource, filename);
+			for (String code : props.stringPropertyNames()) {
+				messages.put(code, props.getProperty(code));
+			}
+			return Collections.unmodifiableMap(messages);
+		}
+		String encoding = getEncoding();
+		Charset charset = (encoding != null ? Charset.forName(encoding) : StreamingPropertiesPersister.ISO_8859_1);
+		if (logger.isDebugEnabled()) {
+			logger.debug("Loading properties [" + resource + "] with encoding '" + charset.name() + "'");
+		}
+		ReadableByteChannel channel = openChannel(resource);
+		try {
+			((StreamingPropertiesPersister) this.propertiesPersister).load(channel, charset,
+					new StreamingPropertiesPersister.PropertyHandler() {
+						@Override
+						public void handleProperty(String key, String value) {
+							messages.put(key, value);
+						}
+					});
+		}
+		finally {
+			channel.close();
+		}
+		return Collections.unmodifiableMap(messages);
+	}
+
+	private static ReadableByteChannel openChannel(URL resource) throws IOException {
+		if ("file".equals(resource.getProtocol())) {
+			try {
+				return new FileInputStream(new File(resource.toURI())).getChannel();
+			}
+			catch (URISyntaxException ex) {
+				// not a plain file path - read it as a stream
+			}
+			catch (IllegalArgumentException ex) {
+				// not a plain file path - read it as a stream
+			}
+		}
+		return Channels.newChannel(resource.openStream());
+	}
+
+	/**
+	 * Collect the codes of all bundles visible for the given Locale and of
+	 * the common messages, loading the bundles as necessary.
+	 */
+	private Set<String> getVisibleCodes(Locale locale) {
+		Set<String> codes = new HashSet<String>();
+		if (this.cacheMillis < 0) {
+			codes.addAll(getMergedProperties(locale).getCodes());
+		}
+		else {
+			FallbackChain chain = getFallbackChain(locale);
+			for (int i = 0; i < chain.size(); i++) {
+				codes.addAll(getProperties(chain, i).getCodes());
+			}
+		}
+		Properties commonMessages = getCommonMessages();
+		if (commonMessages != null) {
+			codes.addAll(commonMessages.stringPropertyNames());
+		}
+		return codes;
+	}
+
+
+	/**
+	 * State of a source and its ancestors: their parents, bundle file
+	 * generations and common messages, as taken at creation time.
+	 */
+	private static class HierarchyState {
+
+		final ReLoaderI18nMessageSource[] sources;
+
+		final MessageSource[] parents;
+
+		final long[] generations;
+
+		final Properties[] commonMessages;
+
+		/** First ancestor that isn't a ReLoaderI18nMessageSource, or {@code null} */
+		final MessageSource tail;
+
+		long expiresAt = Long.MAX_VALUE;
+
+		HierarchyState(ReLoaderI18nMessageSource[] sources) {
+			this.sources = sources;
+			this.parents = new MessageSource[sources.length];
+			this.generations = new long[sources.length];
+			this.commonMessages = new Properties[sources.length];
+			long now = System.currentTimeMillis();
+			for (int i = 0; i < sources.length; i++) {
+				this.parents[i] = sources[i].getParentMessageSource();
+				this.generations[i] = sources[i].propertiesGeneration.get();
+				this.commonMessages[i] = sources[i].getCommonMessages();
+				if (sources[i].cacheMillis >= 0) {
+					this.expiresAt = Math.min(this.expiresAt, now + sources[i].cacheMillis);
+				}
+			}
+			MessageSource last = this.parents[sources.length - 1];
+			this.tail = (last instanceof ReLoaderI18nMessageSource ? null : last);
+		}
+
+		/**
+		 * Collect the given source and its ReLoaderI18nMessageSource ancestors.
+		 */
+		static ReLoaderI18nMessageSource[] collectSources(ReLoaderI18nMessageSource first) {
+			List<ReLoaderI18nMessageSource> sources = new ArrayList<ReLoaderI18nMessageSource>();
+			MessageSource source = first;
+			while (source instanceof ReLoaderI18nMessageSource && !sources.contains(source)) {
+				sources.add((ReLoaderI18nMessageSource) source);
+				source = ((ReLoaderI18nMessageSource) source).getParentMessageSource();
+			}
+			return sources.toArray(new ReLoaderI18nMessageSource[sources.size()]);
+		}
+
+		boolean isUpToDate() {
+			for (int i = 0; i < this.sources.length; i++) {
+				ReLoaderI18nMessageSource source = this.sources[i];
+				if (source.getParentMessageSource() != this.parents[i] ||
+						source.propertiesGeneration.get() != this.generations[i] ||
+						source.getCommonMessages() != this.commonMessages[i]) {
+					return false;
+				}
+			}
+			return (this.expiresAt == Long.MAX_VALUE || this.expiresAt >= System.currentTimeMillis());
+		}
+	}
+
+
+	/**
+	 * Messages of a source and its ancestors for one Locale, flattened into
+	 * one holder, together with the state of each source they were built from.
+	 */
+	private static final class FlattenedHierarchy extends HierarchyState {
+
+		/** Identifies the flattened messages, unique per source */
+		final long generation;
+
+		PropertiesHolder messages;
+
+		FlattenedHierarchy(ReLoaderI18nMessageSource[] sources, long generation) {
+			super(sources);
+			this.generation = generation;
+		}
+	}
+
+
+	/**
+	 * Codes found absent for one Locale in a source and its ancestors,
+	 * together with the state of each source they were looked up in.
+	 * <p>Misses can only be remembered if every ancestor tracks its
+	 * messages, i.e. is a ReLoaderI18nMessageSource or tells a
+	 * {@link AbstractMessageSource#getResolutionStamp() resolution stamp}.
+	 */
+	private static final class AbsentCodes extends HierarchyState {
+
+		final Set<String> codes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+		private final long tailStamp;
+
+		AbsentCodes(ReLoaderI18nMessageSource source) {
+			super(collectSources(source));
+			if (this.tail == null) {
+				this.tailStamp = 0;
+			}
+			else if (this.tail instanceof AbstractMessageSource) {
+				this.tailStamp = ((AbstractMessageSource) this.tail).getResolutionStamp();
+			}
+			else {
+				this.tailStamp = -1;
+			}
+		}
+
+		boolean isCacheable() {
+			return (this.tailStamp >= 0);
+		}
+
+		@Override
+		boolean isUpToDate() {
+			if (!isCacheable() || !super.isUpToDate()) {
+				return false;
+			}
+			return (this.tail == null || ((AbstractMessageSource) this.tail).getResolutionStamp() == this.tailStamp);
+		}
+	}
+
 }
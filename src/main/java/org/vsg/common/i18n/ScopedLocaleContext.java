@@ -0,0 +1,69 @@
+package org.vsg.common.i18n;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * {@link LocaleContext} binding a Locale for the extent of a call only, in
+ * the style of {@code java.lang.ScopedValue}: the binding can't be changed
+ * inside the scope, nested scopes rebind it, and it is always gone once the
+ * call returns. Nothing is left behind on pooled or virtual threads, which
+ * suits thread-per-request code on virtual threads.
+ * <p>Bindings are not inherited by threads started within the scope.
+ * @author vison ruan
+ *
+ */
+public class ScopedLocaleContext implements LocaleContext {
+
+	private final ThreadLocal<Locale> localeHolder = new ThreadLocal<Locale>();
+
+
+	/**
+	 * Run the given task with the given Locale bound.
+	 */
+	public void runWhere(Locale locale, Runnable task) {
+		Locale previous = bind(locale);
+		try {
+			task.run();
+		}
+		finally {
+			restore(previous);
+		}
+	}
+
+	/**
+	 * Call the given task with the given Locale bound.
+	 * @return the result of the task
+	 * @throws Exception if the task throws one
+	 */
+	public <T> T callWhere(Locale locale, Callable<T> task) throws Exception {
+		Locale previous = bind(locale);
+		try {
+			return task.call();
+		}
+		finally {
+			restore(previous);
+		}
+	}
+
+	@Override
+	public Locale getLocale() {
+		return this.localeHolder.get();
+	}
+
+	private Locale bind(Locale locale) {
+		Locale previous = this.localeHolder.get();
+		this.localeHolder.set(locale);
+		return previous;
+	}
+
+	private void restore(Locale previous) {
+		if (previous != null) {
+			this.localeHolder.set(previous);
+		}
+		else {
+			this.localeHolder.remove();
+		}
+	}
+
+}
@@ -0,0 +1,381 @@
+package org.vsg.common.i18n;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * {@link PropertiesPersister} that can also parse {@code .properties} syntax
+ * straight from a {@link ReadableByteChannel} or {@link ByteBuffer}, handing
+ * each key/value pair to a {@link PropertyHandler} instead of filling a
+ * {@code Properties} object.
+ * <p>ISO-8859-1 (and thus ASCII) and UTF-8 are decoded byte by byte while
+ * parsing; other charsets are decoded up front. Keys and values are
+ * unescaped exactly like {@link java.util.Properties#load(java.io.Reader)}
+ * does, and malformed UTF-8 is replaced by U+FFFD like an
+ * {@code InputStreamReader} would.
+ * @author vison ruan
+ *
+ */
+public class StreamingPropertiesPersister extends DefaultPropertiesPersister {
+
+	static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final char REPLACEMENT = '\uFFFD';
+
+
+	/**
+	 * Callback receiving the parsed properties in file order. A key occurring
+	 * more than once is passed each time; the last value is meant to win.
+	 */
+	public interface PropertyHandler {
+
+		void handleProperty(String key, String value);
+	}
+
+
+	/**
+	 * Read the given channel to its end and parse its content.
+	 * The channel is not closed.
+	 * @param channel the channel to read from
+	 * @param charset the charset of the content
+	 * @param handler the callback to pass the properties to
+	 * @throws IOException in case of I/O errors
+	 * @throws IllegalArgumentException if the content contains a malformed
+	 * {@code \\uxxxx} escape
+	 */
+	public void load(ReadableByteChannel channel, Charset charset, PropertyHandler handler) throws IOException {
+		load(readFully(channel), charset, handler);
+	}
+
+	/**
+	 * Parse the remaining content of the given buffer, consuming it.
+	 * @param buffer the buffer to parse
+	 * @param charset the charset of the content
+	 * @param handler the callback to pass the properties to
+	 * @throws IllegalArgumentException if the content contains a malformed
+	 * {@code \\uxxxx} escape
+	 */
+	public void load(ByteBuffer buffer, Charset charset, PropertyHandler handler) {
+		Parser parser;
+		if (ISO_8859_1.equals(charset) || "US-ASCII".equals(charset.name())) {
+			parser = new Parser(buffer, false, null);
+		}
+		else if (UTF_8.equals(charset)) {
+			parser = new Parser(buffer, true, null);
+		}
+		else {
+			parser = new Parser(null, false, charset.decode(buffer));
+		}
+		parser.parse(handler);
+	}
+
+	private static ByteBuffer readFully(ReadableByteChannel channel) throws IOException {
+		int capacity = 8192;
+		if (channel instanceof FileChannel) {
+			long size = ((FileChannel) channel).size() - ((FileChannel) channel).position();
+			capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(size + 1, 16));
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(capacity);
+		while (channel.read(buffer) >= 0) {
+			if (!buffer.hasRemaining()) {
+				ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.flip();
+				larger.put(buffer);
+				buffer = larger;
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+
+	/**
+	 * Single-use parser following {@code java.util.Properties.LineReader}
+	 * and {@code Properties.load0}.
+	 */
+	private static final class Parser {
+
+		private final ByteBuffer bytes;
+
+		private final boolean utf8;
+
+		private final CharBuffer chars;
+
+		/** Low surrogate still to be returned after a 4-byte UTF-8 sequence */
+		private int pendingChar = -1;
+
+		/** Raw logical line, with continuations joined but escapes still in place */
+		private char[] line = new char[256];
+
+		private final StringBuilder converted = new StringBuilder(256);
+
+		Parser(ByteBuffer bytes, boolean utf8, CharBuffer chars) {
+			this.bytes = bytes;
+			this.utf8 = utf8;
+			this.chars = chars;
+		}
+
+		void parse(PropertyHandler handler) {
+			int limit;
+			while ((limit = readLine()) >= 0) {
+				int keyLen = 0;
+				int valueStart = limit;
+				boolean hasSep = false;
+				boolean precedingBackslash = false;
+				while (keyLen < limit) {
+					char c = this.line[keyLen];
+					if ((c == '=' || c == ':') && !precedingBackslash) {
+						valueStart = keyLen + 1;
+						hasSep = true;
+						break;
+					}
+					else if ((c == ' ' || c == '\t' || c == '\f') && !precedingBackslash) {
+						valueStart = keyLen + 1;
+						break;
+					}
+					precedingBackslash = (c == '\\' && !precedingBackslash);
+					keyLen++;
+				}
+				while (valueStart < limit) {
+					char c = this.line[valueStart];
+					if (c != ' ' && c != '\t' && c != '\f') {
+						if (!hasSep && (c == '=' || c == ':')) {
+							hasSep = true;
+						}
+						else {
+							break;
+						}
+					}
+					valueStart++;
+				}
+				String key = convert(0, keyLen);
+				String value = convert(valueStart, limit - valueStart);
+				handler.handleProperty(key, value);
+			}
+		}
+
+		/**
+		 * Read the next logical line, skipping blank and comment lines.
+		 * @return its length, or -1 at the end of the content
+		 */
+		private int readLine() {
+			int len = 0;
+			boolean skipWhiteSpace = true;
+			boolean isCommentLine = false;
+			boolean isNewLine = true;
+			boolean appendedLineBegin = false;
+			boolean precedingBackslash = false;
+			boolean skipLF = false;
+			while (true) {
+				int next = read();
+				if (next < 0) {
+					if (isCommentLine || len == 0) {
+						return -1;
+					}
+					return (precedingBackslash ? len - 1 : len);
+				}
+				char c = (char) next;
+				if (skipLF) {
+					skipLF = false;
+					if (c == '\n') {
+						continue;
+					}
+				}
+				if (skipWhiteSpace) {
+					if (c == ' ' || c == '\t' || c == '\f') {
+						continue;
+					}
+					if (!appendedLineBegin && (c == '\r' || c == '\n')) {
+						continue;
+					}
+					skipWhiteSpace = false;
+					appendedLineBegin = false;
+				}
+				if (isNewLine) {
+					isNewLine = false;
+					if (c == '#' || c == '!') {
+						isCommentLine = true;
+						continue;
+					}
+				}
+				if (c != '\n' && c != '\r') {
+					if (isCommentLine) {
+						continue;
+					}
+					if (len == this.line.length) {
+						char[] larger = new char[len * 2];
+						System.arraycopy(this.line, 0, larger, 0, len);
+						this.line = larger;
+					}
+					this.line[len++] = c;
+					precedingBackslash = (c == '\\' && !precedingBackslash);
+				}
+				else {
+					// reached end of line
+					if (isCommentLine || len == 0) {
+						isCommentLine = false;
+						isNewLine = true;
+						skipWhiteSpace = true;
+						len = 0;
+						skipLF = (c == '\r');
+						continue;
+					}
+					if (precedingBackslash) {
+						// continuation: drop the backslash, skip the next line's leading whitespace
+						len--;
+						skipWhiteSpace = true;
+						appendedLineBegin = true;
+						precedingBackslash = false;
+						skipLF = (c == '\r');
+					}
+					else {
+						return len;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Unescape the given section of the current line.
+		 */
+		private String convert(int offset, int length) {
+			int end = offset + length;
+			int escape = offset;
+			while (escape < end && this.line[escape] != '\\') {
+				escape++;
+			}
+			if (escape == end) {
+				return new String(this.line, offset, length);
+			}
+			StringBuilder out = this.converted;
+			out.setLength(0);
+			out.append(this.line, offset, escape - offset);
+			int i = escape;
+			while (i < end) {
+				char c = this.line[i++];
+				if (c != '\\') {
+					out.append(c);
+					continue;
+				}
+				c = this.line[i++];
+				if (c == 'u') {
+					if (i + 4 > end) {
+						throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+					}
+					int value = 0;
+					for (int j = 0; j < 4; j++) {
+						int digit = Character.digit(this.line[i++], 16);
+						if (digit < 0) {
+							throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+						}
+						value = (value << 4) | digit;
+					}
+					out.append((char) value);
+				}
+				else if (c == 't') {
+					out.append('\t');
+				}
+				else if (c == 'r') {
+					out.append('\r');
+				}
+				else if (c == 'n') {
+					out.append('\n');
+				}
+				else if (c == 'f') {
+					out.append('\f');
+				}
+				else {
+					out.append(c);
+				}
+			}
+			return out.toString();
+		}
+
+		/**
+		 * Return the next char, or -1 at the end of the content.
+		 */
+		private int read() {
+			if (this.chars != null) {
+				return (this.chars.hasRemaining() ? this.chars.get() : -1);
+			}
+			if (this.pendingChar >= 0) {
+				int c = this.pendingChar;
+				this.pendingChar = -1;
+				return c;
+			}
+			if (!this.bytes.hasRemaining()) {
+				return -1;
+			}
+			int b = this.bytes.get();
+			if (b >= 0) {
+				return b;
+			}
+			if (!this.utf8) {
+				return b & 0xFF;
+			}
+			return decodeUtf8(b & 0xFF);
+		}
+
+		/**
+		 * Decode the multi-byte UTF-8 sequence starting with the given lead
+		 * byte, consuming only the valid part of a malformed sequence.
+		 */
+		private int decodeUtf8(int lead) {
+			int count;
+			int codePoint;
+			int min = 0x80;
+			int max = 0xBF;
+			if (lead >= 0xC2 && lead <= 0xDF) {
+				count = 1;
+				codePoint = lead & 0x1F;
+			}
+			else if (lead >= 0xE0 && lead <= 0xEF) {
+				count = 2;
+				codePoint = lead & 0x0F;
+				if (lead == 0xE0) {
+					min = 0xA0;
+				}
+				else if (lead == 0xED) {
+					max = 0x9F;
+				}
+			}
+			else if (lead >= 0xF0 && lead <= 0xF4) {
+				count = 3;
+				codePoint = lead & 0x07;
+				if (lead == 0xF0) {
+					min = 0x90;
+				}
+				else if (lead == 0xF4) {
+					max = 0x8F;
+				}
+			}
+			else {
+				return REPLACEMENT;
+			}
+			for (int i = 0; i < count; i++) {
+				if (!this.bytes.hasRemaining()) {
+					return REPLACEMENT;
+				}
+				int b = this.bytes.get(this.bytes.position()) & 0xFF;
+				if (b < min || b > max) {
+					return REPLACEMENT;
+				}
+				this.bytes.get();
+				codePoint = (codePoint << 6) | (b & 0x3F);
+				min = 0x80;
+				max = 0xBF;
+			}
+			if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+				this.pendingChar = Character.lowSurrogate(codePoint);
+				return Character.highSurrogate(codePoint);
+			}
+			return codePoint;
+		}
+	}
+}
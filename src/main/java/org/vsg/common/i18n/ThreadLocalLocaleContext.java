@@ -0,0 +1,54 @@
+package org.vsg.common.i18n;
+
+import java.util.Locale;
+
+/**
+ * {@link LocaleContext} holding the Locale per thread, set e.g. by a request
+ * filter at the start of a request and reset at its end.
+ * <p>This is the default context of {@link ReLoaderI18nMessageSource}; all
+ * sources share the {@link #getSharedInstance() shared instance} unless
+ * configured otherwise.
+ * @author vison ruan
+ *
+ */
+public class ThreadLocalLocaleContext implements LocaleContext {
+
+	private static final ThreadLocalLocaleContext sharedInstance = new ThreadLocalLocaleContext();
+
+	private final ThreadLocal<Locale> localeHolder = new ThreadLocal<Locale>();
+
+
+	/**
+	 * Return the instance shared by all message sources by default.
+	 */
+	public static ThreadLocalLocaleContext getSharedInstance() {
+		return sharedInstance;
+	}
+
+	/**
+	 * Set the Locale of the current thread.
+	 * @param locale the Locale, or {@code null} to reset it
+	 */
+	public void setLocale(Locale locale) {
+		if (locale != null) {
+			this.localeHolder.set(locale);
+		}
+		else {
+			this.localeHolder.remove();
+		}
+	}
+
+	/**
+	 * Reset the Locale of the current thread, e.g. at the end of a request
+	 * on a pooled thread.
+	 */
+	public void resetLocale() {
+		this.localeHolder.remove();
+	}
+
+	@Override
+	public Locale getLocale() {
+		return this.localeHolder.get();
+	}
+
+}
@@ -1,7 +1,51 @@
 package org.vsg.common.i18n;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
 
+import org.junit.Assume;
 import org.junit.Test;
 
 public class ClasspathI18nMessageProviderTest {
@@ -30,4 +74,830 @@ public class ClasspathI18nMessageProviderTest {
 		System.out.println(firstName);
 	}	
 
+
+	@Test
+	public void testConcurrentMissLoadsFileOnce() throws Exception {
+		final AtomicInteger loads = new AtomicInteger();
+		final ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider() {
+			@Override
+			PropertiesHolder refreshResourceProperties(String filename, PropertiesHolder propHolder) {
+				if ("i18n/message_zh_CN".equals(filename)) {
+					loads.incrementAndGet();
+				}
+				return super.refreshResourceProperties(filename, propHolder);
+			}
+		};
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<String> results = new ArrayList<String>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 200; i++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					}
+					catch (InterruptedException ex) {
+						return;
+					}
+					String firstName = provider.getMessage("label.firstname", null, Locale.CHINA);
+					synchronized (results) {
+						results.add(firstName);
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(200, results.size());
+		for (String firstName : results) {
+			assertEquals("\u4E2D\u6587\u59D3", firstName);
+		}
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testMessageKeyLookup() throws Exception {
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+
+		DefaultMessageSourceMetrics metrics = new DefaultMessageSourceMetrics();
+		provider.setMetrics(metrics);
+
+		MessageKey firstName = provider.key("label.firstname");
+		LocaleKey china = provider.localeKey(Locale.CHINA);
+		assertEquals(provider.getMessage("label.firstname", null, Locale.CHINA), provider.getMessage(firstName, china));
+		assertEquals(2, metrics.snapshot().getLookupHits());
+
+		// registered after the row for the Locale was built
+		MessageKey title = provider.key("label.title");
+		assertEquals("\u4F01\u4E1A\u7248\u672C", provider.getMessage(title, china));
+		LocaleKey france = provider.localeKey(Locale.FRANCE);
+		assertEquals(provider.getMessage("label.title", null, Locale.FRANCE), provider.getMessage(title, france));
+
+		// rows are rebuilt once invalidated after the system Locale to fall back to changed
+		Locale defaultLocale = Locale.getDefault();
+		try {
+			Locale.setDefault(Locale.CHINA);
+			assertEquals("\u4F01\u4E1A\u7248\u672C", provider.getMessage("label.title", null, Locale.FRANCE));
+			assertEquals("\u4F01\u4E1A\u7248\u672C", provider.getMessage(title, france));
+		}
+		finally {
+			Locale.setDefault(defaultLocale);
+		}
+	}
+
+	@Test(expected = NoSuchMessageException.class)
+	public void testMessageKeyLookup_Missing() throws Exception {
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+
+		provider.getMessage(provider.key("label.missing"), provider.localeKey(Locale.CHINA));
+	}
+
+	@Test
+	public void testFallbackChainWithRefresh() throws Exception {
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+		provider.setCacheMillis(0);
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+
+		assertEquals("\u4E2D\u6587\u59D3", provider.getMessage("label.firstname", null, Locale.CHINA));
+		assertEquals("Last Name", provider.getMessage("label.lastname", null, Locale.CHINA));
+
+		ClasspathI18nMessageProvider merged = new ClasspathI18nMessageProvider();
+		merged.setBasenames(provider.getBasenames());
+		assertEquals(merged.getMessage("label.firstname", null, Locale.FRANCE),
+				provider.getMessage("label.firstname", null, Locale.FRANCE));
+	}
+
+	@Test
+	public void testFallbackChainSurvivesReload() throws Exception {
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+		provider.setCacheMillis(0);
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+
+		assertEquals("\u4E2D\u6587\u59D3", provider.getMessage("label.firstname", null, Locale.CHINA));
+		FallbackChain chain = provider.getFallbackChain(Locale.CHINA);
+
+		Properties reloaded = new Properties();
+		reloaded.setProperty("label.firstname", "Reloaded");
+		provider.updateProperties(chain.getFilename(0), new PropertiesHolder(reloaded, 1));
+
+		assertEquals("Reloaded", provider.getMessage("label.firstname", null, Locale.CHINA));
+		assertSame(chain, provider.getFallbackChain(Locale.CHINA));
+	}
+
+	@Test
+	public void testMissingCodeSkipsBundleLookup() throws Exception {
+		final AtomicInteger lookups = new AtomicInteger();
+		ClasspathI18nMessageProvider parent = new ClasspathI18nMessageProvider();
+		parent.setBasenames(new String[]
+			{"i18n/message"}
+		);
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider() {
+			@Override
+			protected String resolveCodeWithoutArguments(String code, Locale locale) {
+				lookups.incrementAndGet();
+				return super.resolveCodeWithoutArguments(code, locale);
+			}
+		};
+		provider.setBasenames(new String[]
+			{"i18n/error"}
+		);
+		provider.setParentMessageSource(parent);
+		Properties commonMessages = new Properties();
+		commonMessages.setProperty("label.common", "Common");
+		provider.setCommonMessages(commonMessages);
+
+		assertEquals("\u4E2D\u6587\u59D3", provider.getMessage("label.firstname", null, Locale.CHINA));
+		assertEquals("Common", provider.getMessage("label.common", null, Locale.CHINA));
+		assertEquals("fallback", provider.getMessage("label.missing", null, "fallback", Locale.CHINA));
+		assertEquals(3, lookups.get());
+		assertEquals("fallback", provider.getMessage("label.missing", null, "fallback", Locale.CHINA));
+		assertEquals(3, lookups.get());
+	}
+
+	@Test
+	public void testMissingCodeFoundAfterReload() throws Exception {
+		final AtomicInteger lookups = new AtomicInteger();
+		ClasspathI18nMessageProvider parent = new ClasspathI18nMessageProvider();
+		parent.setCacheMillis(60000);
+		parent.setBasenames(new String[]
+			{"i18n/message"}
+		);
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider() {
+			@Override
+			protected String resolveCodeWithoutArguments(String code, Locale locale) {
+				lookups.incrementAndGet();
+				return super.resolveCodeWithoutArguments(code, locale);
+			}
+		};
+		provider.setCacheMillis(60000);
+		provider.setBasenames(new String[]
+			{"i18n/error"}
+		);
+		provider.setParentMessageSource(parent);
+
+		assertEquals("fallback", provider.getMessage("label.missing", null, "fallback", Locale.CHINA));
+		assertEquals("fallback", provider.getMessage("label.missing", null, "fallback", Locale.CHINA));
+		assertEquals(1, lookups.get());
+
+		Properties reloaded = new Properties();
+		reloaded.setProperty("label.missing", "Parent");
+		parent.updateProperties(parent.getFallbackChain(Locale.CHINA).getFilename(0), new PropertiesHolder(reloaded, 1));
+		assertEquals("Parent", provider.getMessage("label.missing", null, "fallback", Locale.CHINA));
+
+		reloaded = new Properties();
+		reloaded.setProperty("label.missing", "Child");
+		provider.updateProperties(provider.getFallbackChain(Locale.CHINA).getFilename(0), new PropertiesHolder(reloaded, 1));
+		assertEquals("Child", provider.getMessage("label.missing", null, "fallback", Locale.CHINA));
+	}
+
+	@Test
+	public void testRefreshSkipsUnmodifiedFile() throws Exception {
+		File directory = File.createTempFile("i18n", "");
+		directory.delete();
+		File file = new File(directory, "bundle/test.properties");
+		file.getParentFile().mkdirs();
+		try {
+			writeFile(file, "label=One\n");
+			file.setLastModified(1000000000000L);
+
+			final AtomicInteger loads = new AtomicInteger();
+			ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider() {
+				@Override
+				protected Map<String, String> loadMessages(URL resource, String filename) throws IOException {
+					loads.incrementAndGet();
+					return super.loadMessages(resource, filename);
+				}
+			};
+			provider.setBundleClassLoader(new URLClassLoader(new URL[] {directory.toURI().toURL()}, null));
+			provider.setBasenames(new String[] {"bundle/test"});
+			provider.setCacheMillis(1);
+			provider.setRefreshExecutor(new Executor() {
+				@Override
+				public void execute(Runnable command) {
+					command.run();
+				}
+			});
+
+			assertEquals("One", provider.getMessage("label", null, Locale.ROOT));
+			assertEquals(1, loads.get());
+
+			Thread.sleep(10);
+			assertEquals("One", provider.getMessage("label", null, Locale.ROOT));
+			assertEquals(1, loads.get());
+
+			writeFile(file, "label=Two\n");
+			file.setLastModified(1000000010000L);
+			Thread.sleep(10);
+			provider.getMessage("label", null, Locale.ROOT);
+			assertEquals("Two", provider.getMessage("label", null, Locale.ROOT));
+			assertEquals(2, loads.get());
+		}
+		finally {
+			file.delete();
+			file.getParentFile().delete();
+			directory.delete();
+		}
+	}
+
+	private static void writeFile(File file, String content) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(content);
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	@Test
+	public void testCompactStorage() throws Exception {
+		ClasspathI18nMessageProvider expected = new ClasspathI18nMessageProvider();
+		expected.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+		for (long cacheMillis : new long[] {-1, 60000}) {
+			ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+			provider.setCacheMillis(cacheMillis);
+			provider.setCompactStorage(true);
+			provider.setBasenames(new String[]
+				{"i18n/message","i18n/error"}
+			);
+			for (Locale locale : new Locale[] {Locale.CHINA, Locale.ENGLISH}) {
+				for (String code : expected.getMergedProperties(locale).getCodes()) {
+					assertEquals(code, expected.getMessage(code, new Object[] {"Vison", 3}, locale),
+							provider.getMessage(code, new Object[] {"Vison", 3}, locale));
+				}
+				assertEquals("fallback", provider.getMessage("label.missing", null, "fallback", locale));
+			}
+		}
+
+		Properties props = new Properties();
+		props.setProperty("label.\u540D", "\u4E2D\u6587");
+		props.setProperty("Aa", "collides with BB");
+		props.setProperty("BB", "collides with Aa");
+		MessageArena arena = MessageArena.build(props);
+		assertEquals(3, arena.size());
+		assertEquals("\u4E2D\u6587", arena.get("label.\u540D"));
+		assertEquals("collides with Aa", arena.get("BB"));
+		assertEquals("collides with BB", arena.get("Aa"));
+		assertEquals(null, arena.get("label.\u540E"));
+		assertEquals(props.stringPropertyNames(), arena.codes());
+	}
+
+	@Test
+	public void testPreload() throws Exception {
+		final AtomicInteger loads = new AtomicInteger();
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider() {
+			@Override
+			PropertiesHolder refreshResourceProperties(String filename, PropertiesHolder propHolder) {
+				loads.incrementAndGet();
+				return super.refreshResourceProperties(filename, propHolder);
+			}
+		};
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+		provider.setPrecompileMessageFormats(true);
+		PreloadStats stats = provider.preload(Arrays.asList(Locale.CHINA, Locale.ENGLISH));
+
+		assertEquals(2, stats.getLocaleCount());
+		assertEquals(loads.get(), stats.getFileCount());
+		assertEquals(2, stats.getLoadedFileCount());
+		assertEquals(provider.getMergedProperties(Locale.CHINA).getCodes().size()
+				+ provider.getMergedProperties(Locale.ENGLISH).getCodes().size(), stats.getMessageFormatCount());
+
+		assertEquals("\u4E2D\u6587\u59D3", provider.getMessage("label.firstname", null, Locale.CHINA));
+		provider.getMessage("label.welcome", new Object[] {"Vison", 3}, Locale.ENGLISH);
+		assertEquals(stats.getFileCount(), loads.get());
+	}
+
+	@Test
+	public void testGetMessages() throws Exception {
+		ClasspathI18nMessageProvider parent = new ClasspathI18nMessageProvider();
+		parent.setBasenames(new String[] {"i18n/error"});
+		Properties parentMessages = new Properties();
+		parentMessages.setProperty("label.parent", "Parent");
+		parent.setCommonMessages(parentMessages);
+		for (long cacheMillis : new long[] {-1, 60000}) {
+			ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+			provider.setCacheMillis(cacheMillis);
+			provider.setBasenames(new String[]
+				{"i18n/message","i18n/error"}
+			);
+			provider.setParentMessageSource(parent);
+			Properties commonMessages = new Properties();
+			commonMessages.setProperty("label.common", "Common");
+			provider.setCommonMessages(commonMessages);
+
+			List<String> codes = Arrays.asList("label.lastname", "label.missing", "label.common", "label.firstname", "label.parent");
+			Map<String, String> messages = provider.getMessages(codes, Locale.CHINA);
+			assertEquals(Arrays.asList("label.lastname", "label.common", "label.firstname", "label.parent"),
+					new ArrayList<String>(messages.keySet()));
+			for (String code : codes) {
+				assertEquals(code, provider.getMessage(code, null, null, Locale.CHINA), messages.get(code));
+			}
+
+			MessageSourceResolvable fallbackCode = new DefaultMessageSourceResolvable(new String[] {"label.missing", "label.lastname"});
+			MessageSourceResolvable withArguments = new DefaultMessageSourceResolvable(new String[] {"label.welcome"}, new Object[] {"Vison", 3});
+			MessageSourceResolvable withDefault = new DefaultMessageSourceResolvable(new String[] {"label.missing"}, "Default");
+			MessageSourceResolvable missing = new DefaultMessageSourceResolvable("label.missing");
+			Map<MessageSourceResolvable, String> resolved = provider.getResolvableMessages(
+					Arrays.asList(fallbackCode, withArguments, withDefault, missing), Locale.CHINA);
+			assertEquals(3, resolved.size());
+			assertEquals("Last Name", resolved.get(fallbackCode));
+			assertEquals(provider.getMessage(withArguments, Locale.CHINA), resolved.get(withArguments));
+			assertEquals("Default", resolved.get(withDefault));
+		}
+	}
+
+	@Test
+	public void testGetAllByLocale() throws Exception {
+		ClasspathI18nMessageProvider parent = new ClasspathI18nMessageProvider();
+		parent.setBasenames(new String[] {"i18n/error"});
+		Properties parentMessages = new Properties();
+		parentMessages.setProperty("label.parent", "Parent");
+		parentMessages.setProperty("label.common", "Parent Common");
+		parent.setCommonMessages(parentMessages);
+		for (long cacheMillis : new long[] {-1, 60000}) {
+			ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+			provider.setCacheMillis(cacheMillis);
+			provider.setBasenames(new String[]
+				{"i18n/message","i18n/error"}
+			);
+			provider.setParentMessageSource(parent);
+			Properties commonMessages = new Properties();
+			commonMessages.setProperty("label.common", "Common");
+			commonMessages.setProperty("label.firstname", "Common First Name");
+			provider.setCommonMessages(commonMessages);
+
+			Properties all = provider.getAllByLocale(Locale.CHINA);
+			Set<String> codes = new HashSet<String>(provider.getMergedProperties(Locale.CHINA).getCodes());
+			codes.add("label.common");
+			codes.add("label.parent");
+			assertEquals(codes, all.stringPropertyNames());
+			assertEquals(codes.size(), all.size());
+			for (String code : codes) {
+				assertEquals(code, provider.getMessage(code, null, Locale.CHINA), all.getProperty(code));
+			}
+			assertEquals("Common", all.getProperty("label.common"));
+
+			final Map<String, String> visited = new HashMap<String, String>();
+			provider.forEachMessage(Locale.CHINA, new BiConsumer<String, String>() {
+				@Override
+				public void accept(String code, String message) {
+					assertEquals(null, visited.put(code, message));
+				}
+			});
+			assertEquals(all, visited);
+			assertEquals(codes.size(), provider.streamMessages(Locale.CHINA).count());
+
+			try {
+				all.setProperty("label.common", "Changed");
+				fail("view must be read-only");
+			}
+			catch (UnsupportedOperationException ex) {
+				// expected
+			}
+
+			// serialized as a plain copy
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(all);
+			out.close();
+			Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+			assertEquals(Properties.class, copy.getClass());
+			assertEquals(all, copy);
+		}
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		DefaultMessageSourceMetrics metrics = new DefaultMessageSourceMetrics();
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+		provider.setMetrics(metrics);
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+
+		provider.getMessage("label.firstname", null, Locale.CHINA);
+		provider.getMessage("label.welcome", new Object[] {"Vison", 3}, Locale.CHINA);
+		provider.getMessage("label.welcome", new Object[] {"Vison", 4}, Locale.CHINA);
+		provider.getMessage("label.missing", null, "fallback", Locale.CHINA);
+		provider.getMessage("label.missing", null, "Hello {0}", new Locale("zh", "CN"));
+
+		DefaultMessageSourceMetrics.Snapshot snapshot = metrics.snapshot();
+		assertEquals(3, snapshot.getLookupHits());
+		assertEquals(2, snapshot.getLookupMisses());
+		assertEquals(3, snapshot.getResolveHits());
+		assertEquals(provider.getFallbackChain(Locale.CHINA).size(), snapshot.getLoads().getCount());
+		assertEquals(snapshot.getLoads().getCount() - 2, snapshot.getMissingFiles());
+		assertEquals(1, snapshot.getCompiles().getCount());
+		assertEquals(2, snapshot.getFormats().getCount());
+		assertTrue(snapshot.getLoads().getPercentileNanos(0.5) <= snapshot.getLoads().getMaxNanos());
+	}
+
+	@Test
+	public void testMessageFormatCache() throws Exception {
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+		provider.setMessageFormatCacheWeight(4096);
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+
+		String first = provider.getMessage("label.welcome", new Object[] {"Vison", 3}, Locale.CHINA);
+		assertEquals(first, provider.getMessage("label.welcome", new Object[] {"Vison", 3}, Locale.CHINA));
+
+		CacheStats stats = provider.getMessageFormatCacheStats();
+		assertEquals(4096, stats.getMaximumWeight());
+		assertTrue(stats.getHitCount() >= 1);
+		assertTrue(stats.getSize() >= 1);
+		assertTrue(stats.getWeightedSize() <= 4096);
+
+		provider.clearCache();
+		assertEquals(0, provider.getMessageFormatCacheStats().getSize());
+		assertEquals(first, provider.getMessage("label.welcome", new Object[] {"Vison", 3}, Locale.CHINA));
+	}
+
+	@Test
+	public void testDefaultMessageFormatCacheIsBounded() throws Exception {
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+		provider.setDefaultMessageFormatCacheWeight(1000);
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+
+		for (int i = 0; i < 500; i++) {
+			assertEquals("Item " + i + ": x", provider.getMessage("label.missing", new Object[] {"x"},
+					"Item " + i + ": {0}", Locale.CHINA));
+		}
+		assertEquals("Item 1: y", provider.getMessage("label.missing", new Object[] {"y"}, "Item 1: {0}", Locale.CHINA));
+
+		CacheStats stats = provider.getDefaultMessageFormatCacheStats();
+		assertTrue(stats.getWeightedSize() <= 1000);
+		assertTrue(stats.getSize() < 500);
+		assertTrue(stats.getEvictionCount() > 0);
+	}
+
+	@Test
+	public void testRenderedMessageCache() throws Exception {
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+		assertEquals(null, provider.getRenderedMessageCacheStats());
+		provider.setRenderedMessageCacheWeight(4096);
+
+		Object[] args = new Object[] {"Vison", 3};
+		String first = provider.getMessage("label.welcome", args, Locale.CHINA);
+		args[1] = 4;
+		assertEquals("Welcome Vison, you have 4 new messages", provider.getMessage("label.welcome", args, Locale.CHINA));
+		assertEquals(first, provider.getMessage("label.welcome", new Object[] {"Vison", 3}, Locale.CHINA));
+		CacheStats stats = provider.getRenderedMessageCacheStats();
+		assertEquals(1, stats.getHitCount());
+		assertEquals(2, stats.getSize());
+
+		// mutable arguments are not cached
+		provider.getMessage("label.welcome", new Object[] {new Date(), 3}, Locale.CHINA);
+		provider.getMessage("label.welcome", new Object[] {new Date(), 3}, Locale.CHINA);
+		assertEquals(2, provider.getRenderedMessageCacheStats().getSize());
+
+		// messages without arguments once they go through MessageFormat
+		provider.setAlwaysUseMessageFormat(true);
+		assertEquals("Last Name", provider.getMessage("label.lastname", null, Locale.CHINA));
+		assertEquals("Last Name", provider.getMessage("label.lastname", null, Locale.CHINA));
+		stats = provider.getRenderedMessageCacheStats();
+		assertEquals(2, stats.getHitCount());
+		assertEquals(3, stats.getSize());
+	}
+
+	@Test
+	public void testRenderedMessageCacheAfterReload() throws Exception {
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+		provider.setRenderedMessageCacheWeight(4096);
+
+		Object[] args = new Object[] {"Vison", 3};
+		assertEquals("Welcome Vison, you have 3 new messages", provider.getMessage("label.welcome", args, Locale.CHINA));
+		assertEquals("Welcome Vison, you have 3 new messages", provider.getMessage("label.welcome", args, Locale.CHINA));
+		assertEquals(1, provider.getRenderedMessageCacheStats().getHitCount());
+
+		Properties reloaded = new Properties();
+		reloaded.setProperty("label.welcome", "Hello {0}");
+		provider.updateProperties(provider.getFallbackChain(Locale.CHINA).getFilename(0), new PropertiesHolder(reloaded, 1));
+		assertEquals("Hello Vison", provider.getMessage("label.welcome", args, Locale.CHINA));
+
+		// java.time values are immutable
+		LocalDate date = LocalDate.of(2024, 1, 31);
+		assertEquals("Hello " + date, provider.getMessage("label.welcome", new Object[] {date}, Locale.CHINA));
+		assertEquals(3, provider.getRenderedMessageCacheStats().getSize());
+	}
+
+	@Test
+	public void testRenderMessage() throws Exception {
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+		Properties commonMessages = new Properties();
+		commonMessages.setProperty("label.common", "Common {0}");
+		provider.setCommonMessages(commonMessages);
+
+		StringBuilder out = new StringBuilder("> ");
+		provider.renderMessage("label.lastname", null, Locale.CHINA, out);
+		out.append(" | ");
+		provider.renderMessage("label.welcome", new Object[] {"Vison", 3}, Locale.CHINA, out);
+		out.append(" | ");
+		provider.renderMessage("label.common", new Object[] {"text"}, Locale.CHINA, out);
+		assertEquals("> Last Name | " + provider.getMessage("label.welcome", new Object[] {"Vison", 3}, Locale.CHINA) +
+				" | Common text", out.toString());
+
+		StringWriter writer = new StringWriter();
+		provider.renderMessage("label.welcome", new Object[] {"Vison", 4}, Locale.CHINA, writer);
+		assertEquals(provider.getMessage("label.welcome", new Object[] {"Vison", 4}, Locale.CHINA), writer.toString());
+
+		try {
+			provider.renderMessage("label.missing", null, Locale.CHINA, out);
+			fail("Should have thrown NoSuchMessageException");
+		}
+		catch (NoSuchMessageException ex) {
+			// expected
+		}
+		assertEquals("> Last Name | ", out.substring(0, 14));
+	}
+
+	@Test
+	public void testArgumentOverloads() throws Exception {
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+
+		String expected = provider.getMessage("label.welcome", new Object[] {"Vison", 3}, Locale.CHINA);
+		assertEquals(expected, provider.getMessage("label.welcome", Locale.CHINA, "Vison", 3));
+		assertEquals(expected, provider.getMessage("label.welcome", Locale.CHINA, (Object) "Vison", 3));
+		assertEquals(provider.getMessage("label.lastname", new Object[] {"Vison", "x"}, Locale.CHINA),
+				provider.getMessage("label.lastname", Locale.CHINA, "Vison", "x"));
+		assertEquals(provider.getMessage("label.welcome", new Object[] {7}, Locale.CHINA),
+				provider.getMessage("label.welcome", Locale.CHINA, 7L));
+		assertEquals(provider.getMessage("label.welcome", new Object[] {1, 2}, Locale.CHINA),
+				provider.getMessage("label.welcome", Locale.CHINA, 1, 2));
+		// codes not compiled by this source take the regular path
+		Properties commonMessages = new Properties();
+		commonMessages.setProperty("label.common", "Common {0}");
+		provider.setCommonMessages(commonMessages);
+		assertEquals("Common 5", provider.getMessage("label.common", Locale.CHINA, 5));
+		try {
+			provider.getMessage("label.missing", Locale.CHINA, 5);
+			fail("Should have thrown NoSuchMessageException");
+		}
+		catch (NoSuchMessageException ex) {
+			// expected
+		}
+
+		Object[] args = new Object[] {"Vison", 3};
+		assertSame(args, provider.resolveArguments(args, Locale.CHINA));
+		Object[] withResolvable = new Object[] {new DefaultMessageSourceResolvable("label.lastname"), 3};
+		Object[] resolved = provider.resolveArguments(withResolvable, Locale.CHINA);
+		assertEquals("Last Name", resolved[0]);
+		assertTrue(withResolvable[0] instanceof MessageSourceResolvable);
+	}
+
+	@Test
+	public void testFlattenHierarchy() throws Exception {
+		ClasspathI18nMessageProvider root = new ClasspathI18nMessageProvider();
+		root.setBasenames(new String[] {"i18n/none"});
+		Properties rootMessages = new Properties();
+		rootMessages.setProperty("label.root", "Root {0}");
+		rootMessages.setProperty("label.lastname", "Root Last Name");
+		root.setCommonMessages(rootMessages);
+
+		ClasspathI18nMessageProvider parent = new ClasspathI18nMessageProvider();
+		parent.setBasenames(new String[] {"i18n/none"});
+		Properties parentMessages = new Properties();
+		parentMessages.setProperty("label.parent", "Parent");
+		parent.setCommonMessages(parentMessages);
+		parent.setParentMessageSource(root);
+
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+		provider.setBasenames(new String[] {"i18n/message"});
+		provider.setParentMessageSource(parent);
+		provider.setFlattenHierarchy(true);
+
+		assertEquals("Last Name", provider.getMessage("label.lastname", null, Locale.CHINA));
+		assertEquals("Parent", provider.getMessage("label.parent", null, Locale.CHINA));
+		assertEquals("Root x", provider.getMessage("label.root", new Object[] {"x"}, Locale.CHINA));
+		assertEquals(null, provider.getMessage("label.missing", null, null, Locale.CHINA));
+
+		// rebuilt once a source in the hierarchy changes
+		Properties replaced = new Properties();
+		replaced.setProperty("label.parent", "Parent 2");
+		parent.setCommonMessages(replaced);
+		assertEquals("Parent 2", provider.getMessage("label.parent", null, Locale.CHINA));
+		assertEquals("Root x", provider.getMessage("label.root", new Object[] {"x"}, Locale.CHINA));
+
+		parent.setParentMessageSource(null);
+		assertEquals(null, provider.getMessage("label.root", null, null, Locale.CHINA));
+
+		// an ancestor of another type is still asked for missing codes
+		parent.setParentMessageSource(new AbstractMessageSource() {
+			@Override
+			protected MessageFormat resolveCode(String code, Locale locale) {
+				return ("label.other".equals(code) ? new MessageFormat("Other {0}", locale) : null);
+			}
+		});
+		assertEquals("Other x", provider.getMessage("label.other", new Object[] {"x"}, Locale.CHINA));
+		// with arguments resolved by the source that was asked
+		assertEquals("Other Last Name", provider.getMessage("label.other",
+				new Object[] {new DefaultMessageSourceResolvable("label.lastname")}, Locale.CHINA));
+	}
+
+	@Test
+	public void testLocaleContext() throws Exception {
+		final ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+		final String chinese = provider.getMessage("label.firstname", null, Locale.CHINA);
+		final String english = provider.getMessage("label.firstname", null, Locale.ROOT);
+
+		final ThreadLocalLocaleContext threadLocalContext = ThreadLocalLocaleContext.getSharedInstance();
+		final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+		Thread first = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				threadLocalContext.setLocale(Locale.CHINA);
+				try {
+					results.add("zh:" + provider.getMessage("label.firstname", null));
+				}
+				finally {
+					threadLocalContext.resetLocale();
+				}
+			}
+		});
+		Thread second = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				threadLocalContext.setLocale(Locale.ROOT);
+				results.add("root:" + provider.getMessage("label.firstname", null, "none"));
+			}
+		});
+		first.start();
+		second.start();
+		first.join();
+		second.join();
+		assertTrue(results.contains("zh:" + chinese));
+		assertTrue(results.contains("root:" + english));
+
+		// falls back to the Locale set on the source
+		provider.setLocale(Locale.CHINA);
+		assertEquals(chinese, provider.getMessage("label.firstname", null));
+		assertEquals("none", provider.getMessage("label.missing", null, "none"));
+
+		final ScopedLocaleContext scopedContext = new ScopedLocaleContext();
+		provider.setLocaleContext(scopedContext);
+		assertEquals(english, scopedContext.callWhere(Locale.ROOT, new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				assertEquals(chinese, scopedContext.callWhere(Locale.CHINA, new Callable<String>() {
+					@Override
+					public String call() {
+						return provider.getMessage("label.firstname", null);
+					}
+				}));
+				return provider.getMessage("label.firstname", null);
+			}
+		}));
+		assertEquals(null, scopedContext.getLocale());
+	}
+
+	@Test
+	public void testVirtualThreadColdLookupsDoNotPin() throws Exception {
+		ExecutorService executor;
+		try {
+			executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (NoSuchMethodException ex) {
+			Assume.assumeNoException("Virtual threads not available", ex);
+			return;
+		}
+		final ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider();
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+		Recording recording = new Recording();
+		recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+		recording.start();
+		final Locale[] locales = {Locale.CHINA, Locale.US, Locale.GERMANY, Locale.FRANCE, Locale.JAPAN, new Locale("zh")};
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		try {
+			for (int i = 0; i < 10000; i++) {
+				final int n = i;
+				futures.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() {
+						Locale locale = locales[n % locales.length];
+						if (n % 3 == 0) {
+							return provider.getMessage("label.welcome", new Object[] {"Vison", n}, locale);
+						}
+						return provider.getMessage("label.missing" + (n % 100), null, "none", locale);
+					}
+				}));
+			}
+			for (Future<String> future : futures) {
+				assertTrue(future.get() != null);
+			}
+		}
+		finally {
+			executor.shutdown();
+			recording.stop();
+		}
+		File dump = File.createTempFile("pinning", ".jfr");
+		try {
+			recording.dump(dump.toPath());
+			int pinned = 0;
+			for (RecordedEvent event : RecordingFile.readAllEvents(dump.toPath())) {
+				// only pinning within this library counts, not within the JDK
+				if (event.getStackTrace() != null) {
+					for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+						if (frame.getMethod().getType().getName().startsWith("org.vsg.common.i18n.")) {
+							pinned++;
+							break;
+						}
+					}
+				}
+			}
+			assertEquals(0, pinned);
+		}
+		finally {
+			recording.close();
+			dump.delete();
+		}
+	}
+
+	@Test
+	public void testResolutionPlan() throws Exception {
+		final AtomicInteger lookups = new AtomicInteger();
+		ClasspathI18nMessageProvider provider = new ClasspathI18nMessageProvider() {
+			@Override
+			protected String getMessageInternal(String code, Object[] args, Locale locale) {
+				lookups.incrementAndGet();
+				return super.getMessageInternal(code, args, locale);
+			}
+		};
+		provider.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+		String[] codes = {"typeMismatch.user.lastname", "typeMismatch.lastname", "typeMismatch.string", "label.lastname"};
+
+		assertEquals("Last Name", provider.getMessage(new DefaultMessageSourceResolvable(codes), Locale.CHINA));
+		assertEquals(4, lookups.get());
+		assertEquals("Last Name", provider.getMessage(new DefaultMessageSourceResolvable(codes.clone()), Locale.CHINA));
+		assertEquals(5, lookups.get());
+
+		// an earlier code becoming resolvable invalidates the plan
+		Properties commonMessages = new Properties();
+		commonMessages.setProperty("typeMismatch.lastname", "Invalid last name");
+		provider.setCommonMessages(commonMessages);
+		assertEquals("Invalid last name", provider.getMessage(new DefaultMessageSourceResolvable(codes), Locale.CHINA));
+
+		// no code found: straight to the default message
+		String[] missing = {"typeMismatch.user.age", "typeMismatch.age"};
+		assertEquals("Bad age", provider.getMessage(new DefaultMessageSourceResolvable(missing, "Bad age"), Locale.CHINA));
+		lookups.set(0);
+		assertEquals("Bad age", provider.getMessage(new DefaultMessageSourceResolvable(missing, "Bad age"), Locale.CHINA));
+		assertEquals(0, lookups.get());
+
+		// refreshing sources can't tell when a file changes, so keep trying every code
+		provider.setCacheMillis(60000);
+		lookups.set(0);
+		provider.getMessage(new DefaultMessageSourceResolvable(codes), Locale.CHINA);
+		provider.getMessage(new DefaultMessageSourceResolvable(codes), Locale.CHINA);
+		assertEquals(4, lookups.get());
+
+		DefaultMessageSourceResolvable resolvable = new DefaultMessageSourceResolvable(codes, new Object[] {1}, "x");
+		assertEquals(resolvable.hashCode(), new DefaultMessageSourceResolvable(codes, new Object[] {1}, "x").hashCode());
+	}
+
 }
@@ -0,0 +1,105 @@
+package org.vsg.common.i18n;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.text.MessageFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class CompiledMessageFormatTest {
+
+	private static final String[] PATTERNS = {
+		"",
+		"plain text",
+		"Hello {0}",
+		"{0} and {1}, then {0} again",
+		"It''s {0}",
+		"'{0}' is quoted, {0} is not",
+		"unmatched } brace {0}",
+		"{0,number}",
+		"{0,number,integer} items",
+		"{0,number,#.##}",
+		"{0,number,percent}",
+		"{1,date,short} at {1,time,short}",
+		"{0,choice,0#no files|1#one file|1<{0,number,integer} files}",
+		"missing {3}",
+	};
+
+	private static final Object[][] ARGUMENTS = {
+		null,
+		new Object[0],
+		new Object[] {"text"},
+		new Object[] {1234.5678, new Date(0L)},
+		new Object[] {0, new Date(86400000L)},
+		new Object[] {1, null},
+		new Object[] {42L, new Date(0L)},
+		new Object[] {null},
+	};
+
+	@Test
+	public void testOutputMatchesMessageFormat() {
+		for (Locale locale : new Locale[] {Locale.US, Locale.CHINA, Locale.GERMANY}) {
+			for (String pattern : PATTERNS) {
+				MessageFormat compiled = CompiledMessageFormat.compile(pattern, locale);
+				assertTrue(pattern, compiled instanceof CompiledMessageFormat);
+				for (Object[] args : ARGUMENTS) {
+					String expected;
+					try {
+						expected = new MessageFormat(pattern, locale).format(args);
+					}
+					catch (IllegalArgumentException ex) {
+						continue;
+					}
+					assertEquals(pattern, expected, ((CompiledMessageFormat) compiled).render(args));
+					assertEquals(pattern, expected, compiled.format(args));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testPrimitiveArgumentsMatchMessageFormat() {
+		long[] numbers = {0, 7, 999, 1000, -5, 1234567L};
+		for (Locale locale : new Locale[] {Locale.US, Locale.CHINA, Locale.GERMANY, new Locale("ar", "EG"), new Locale("hi", "IN")}) {
+			for (String pattern : PATTERNS) {
+				CompiledMessageFormat compiled = (CompiledMessageFormat) CompiledMessageFormat.compile(pattern, locale);
+				for (long number : numbers) {
+					String expected;
+					try {
+						expected = new MessageFormat(pattern, locale).format(new Object[] {number});
+					}
+					catch (IllegalArgumentException ex) {
+						continue;
+					}
+					assertEquals(pattern, expected, compiled.render(number));
+					assertEquals(pattern, new MessageFormat(pattern, locale).format(new Object[] {number, number}),
+							compiled.render(number, number));
+				}
+			}
+		}
+		CompiledMessageFormat compiled = (CompiledMessageFormat) CompiledMessageFormat.compile("{0} has {1,number,integer} files", Locale.US);
+		assertEquals("Vison has 1,234 files", compiled.render("Vison", 1234));
+	}
+
+	@Test
+	public void testQuotedArgumentFallsBackToMessageFormat() {
+		MessageFormat messageFormat = CompiledMessageFormat.compile("{0,number,'#'#}", Locale.US);
+		assertFalse(messageFormat instanceof CompiledMessageFormat);
+		assertEquals("#5", messageFormat.format(new Object[] {5}));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPattern() {
+		CompiledMessageFormat.compile("{0", Locale.US);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testImmutable() {
+		CompiledMessageFormat.compile("{0}", Locale.US).applyPattern("{1}");
+	}
+
+}
@@ -0,0 +1,152 @@
+package org.vsg.common.i18n;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileSystemI18nMessageProviderTest {
+
+	private File directory;
+
+	private FileSystemI18nMessageProvider provider;
+
+	private final BlockingQueue<String> reloads = new LinkedBlockingQueue<String>();
+
+	@Before
+	public void setUp() throws Exception {
+		this.directory = File.createTempFile("i18n", "");
+		this.directory.delete();
+		new File(this.directory, "i18n").mkdirs();
+		write("i18n/message.properties", "label.firstname=First Name\nlabel.lastname=Last Name\n");
+		write("i18n/message_zh_CN.properties", "label.firstname=\\u540D\n");
+
+		this.provider = new FileSystemI18nMessageProvider() {
+			@Override
+			protected void updateProperties(String filename, PropertiesHolder propHolder) {
+				super.updateProperties(filename, propHolder);
+				reloads.add(filename);
+			}
+		};
+		this.provider.setDirectories(new File[] {this.directory});
+		this.provider.setBasenames(new String[] {"i18n/message", "i18n/extra/message"});
+		this.provider.setReloadDelayMillis(20);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.provider.close();
+		new File(this.directory, "i18n/message.properties").delete();
+		new File(this.directory, "i18n/message_zh_CN.properties").delete();
+		new File(this.directory, "i18n/extra/message.properties").delete();
+		new File(this.directory, "i18n/extra").delete();
+		new File(this.directory, "i18n").delete();
+		this.directory.delete();
+	}
+
+	private void write(String file, String content) throws Exception {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(new File(this.directory, file)), "UTF-8");
+		try {
+			writer.write(content);
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Wait until the watcher has published the given bundle file.
+	 */
+	private void awaitReload(String filename) throws Exception {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		String reloaded;
+		do {
+			reloaded = this.reloads.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			assertTrue("No reload of [" + filename + "]", reloaded != null);
+		}
+		while (!filename.equals(reloaded));
+	}
+
+	/**
+	 * Wait until the watcher has published bundle files resolving the given
+	 * code to the given message.
+	 */
+	private void awaitMessage(String code, String expected) throws Exception {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!equals(expected, this.provider.getMessage(code, null, null, Locale.CHINA))) {
+			String reloaded = this.reloads.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			assertTrue("No reload resolving [" + code + "] to [" + expected + "]", reloaded != null);
+		}
+	}
+
+	private static boolean equals(String expected, String actual) {
+		return (expected != null ? expected.equals(actual) : actual == null);
+	}
+
+	@Test
+	public void testGetMessage() throws Exception {
+		assertEquals("\u540D", this.provider.getMessage("label.firstname", null, Locale.CHINA));
+		assertEquals("Last Name", this.provider.getMessage("label.lastname", null, Locale.CHINA));
+	}
+
+	@Test
+	public void testReloadChangedFile() throws Exception {
+		assertEquals("\u540D", this.provider.getMessage("label.firstname", null, Locale.CHINA));
+		assertEquals(null, this.provider.getMessage("label.email", null, null, Locale.CHINA));
+
+		write("i18n/message_zh_CN.properties", "label.firstname=\\u59D3\\u540D\nlabel.email=Email\n");
+		awaitReload("i18n/message_zh_CN");
+		assertEquals("\u59D3\u540D", this.provider.getMessage("label.firstname", null, Locale.CHINA));
+		assertEquals("Email", this.provider.getMessage("label.email", null, Locale.CHINA));
+		assertEquals("Last Name", this.provider.getMessage("label.lastname", null, Locale.CHINA));
+	}
+
+	@Test
+	public void testReloadDeletedFile() throws Exception {
+		assertEquals("\u540D", this.provider.getMessage("label.firstname", null, Locale.CHINA));
+
+		new File(this.directory, "i18n/message_zh_CN.properties").delete();
+		awaitReload("i18n/message_zh_CN");
+		assertEquals("First Name", this.provider.getMessage("label.firstname", null, Locale.CHINA));
+	}
+
+	@Test
+	public void testReloadFileInCreatedDirectory() throws Exception {
+		assertEquals(null, this.provider.getMessage("label.extra", null, null, Locale.CHINA));
+
+		new File(this.directory, "i18n/extra").mkdir();
+		write("i18n/extra/message.properties", "label.extra=Extra\n");
+		awaitReload("i18n/extra/message");
+		assertEquals("Extra", this.provider.getMessage("label.extra", null, Locale.CHINA));
+	}
+
+	@Test
+	public void testReloadFileInRecreatedDirectory() throws Exception {
+		new File(this.directory, "i18n/extra").mkdir();
+		write("i18n/extra/message.properties", "label.extra=Extra\n");
+		assertEquals("Extra", this.provider.getMessage("label.extra", null, Locale.CHINA));
+
+		new File(this.directory, "i18n/extra/message.properties").delete();
+		new File(this.directory, "i18n/extra").delete();
+		awaitMessage("label.extra", null);
+
+		new File(this.directory, "i18n/extra").mkdir();
+		write("i18n/extra/message.properties", "label.extra=Recreated\n");
+		awaitMessage("label.extra", "Recreated");
+
+		write("i18n/extra/message.properties", "label.extra=Modified\n");
+		awaitMessage("label.extra", "Modified");
+	}
+
+}
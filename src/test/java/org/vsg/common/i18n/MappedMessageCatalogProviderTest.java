@@ -0,0 +1,100 @@
+package org.vsg.common.i18n;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedMessageCatalogProviderTest {
+
+	private File catalogFile;
+
+	private ClasspathI18nMessageProvider source;
+
+	private MappedMessageCatalogProvider provider;
+
+	@Before
+	public void setUp() throws Exception {
+		this.source = new ClasspathI18nMessageProvider();
+		this.source.setFallbackToSystemLocale(false);
+		this.source.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+		this.catalogFile = File.createTempFile("i18n", ".catalog");
+		MessageCatalogWriter.write(this.source, Arrays.asList(Locale.CHINA, Locale.ENGLISH), this.catalogFile);
+		this.provider = new MappedMessageCatalogProvider(this.catalogFile);
+	}
+
+	@After
+	public void tearDown() {
+		this.catalogFile.delete();
+	}
+
+	@Test
+	public void testGetMessage() {
+		assertEquals("\u4E2D\u6587\u59D3", this.provider.getMessage("label.firstname", null, Locale.CHINA));
+		assertEquals("Last Name", this.provider.getMessage("label.lastname", null, Locale.CHINA));
+		assertEquals(this.source.getMessage("label.firstname", null, Locale.ENGLISH),
+				this.provider.getMessage("label.firstname", null, Locale.UK));
+		assertEquals(this.source.getMessage("label.welcome", new Object[] {"Vison", 3}, Locale.CHINA),
+				this.provider.getMessage("label.welcome", new Object[] {"Vison", 3}, Locale.CHINA));
+	}
+
+	@Test
+	public void testGetMessage_Missing() {
+		assertEquals("fallback", this.provider.getMessage("label.missing", null, "fallback", Locale.CHINA));
+	}
+
+	@Test(expected = NoSuchMessageException.class)
+	public void testGetMessage_MissingThrows() {
+		this.provider.getMessage("label.missing", null, Locale.CHINA);
+	}
+
+	@Test
+	public void testGetMessage_DefaultLocaleChange() {
+		Locale defaultLocale = Locale.getDefault();
+		try {
+			Locale.setDefault(Locale.CHINA);
+			assertEquals("\u4E2D\u6587\u59D3", this.provider.getMessage("label.firstname", null, Locale.FRANCE));
+			Locale.setDefault(Locale.ENGLISH);
+			assertEquals(this.source.getMessage("label.firstname", null, Locale.ENGLISH),
+					this.provider.getMessage("label.firstname", null, Locale.FRANCE));
+		}
+		finally {
+			Locale.setDefault(defaultLocale);
+		}
+	}
+
+	@Test
+	public void testWrite_ReplacesMappedCatalog() throws Exception {
+		Properties messages = new Properties();
+		messages.setProperty("label.firstname", "Rewritten");
+		MessageCatalogWriter.write(Collections.singletonMap(Locale.ROOT, messages), this.catalogFile);
+
+		assertEquals("\u4E2D\u6587\u59D3", this.provider.getMessage("label.firstname", null, Locale.CHINA));
+		assertEquals("Rewritten", new MappedMessageCatalogProvider(this.catalogFile)
+				.getMessage("label.firstname", null, Locale.CHINA));
+		String[] leftovers = this.catalogFile.getParentFile().list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(catalogFile.getName()) && !name.equals(catalogFile.getName());
+			}
+		});
+		assertEquals(0, leftovers.length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrite_FallbackToSystemLocale() throws Exception {
+		this.source.setFallbackToSystemLocale(true);
+		MessageCatalogWriter.write(this.source, Arrays.asList(Locale.CHINA), this.catalogFile);
+	}
+
+}
@@ -0,0 +1,126 @@
+package org.vsg.common.i18n;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageBundleCompilerTest {
+
+	private File outputDirectory;
+
+	private ClasspathI18nMessageProvider source;
+
+	private CompiledBundleMessageSource provider;
+
+	@Before
+	public void setUp() throws Exception {
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		assumeNotNull(javac);
+
+		this.source = new ClasspathI18nMessageProvider();
+		this.source.setFallbackToSystemLocale(false);
+		this.source.setBasenames(new String[]
+			{"i18n/message","i18n/error"}
+		);
+		this.outputDirectory = File.createTempFile("i18n", "");
+		this.outputDirectory.delete();
+		this.outputDirectory.mkdirs();
+
+		List<File> files = new MessageBundleCompiler(this.source).compile(
+				"org.vsg.generated.Messages", Arrays.asList(Locale.CHINA), this.outputDirectory);
+		// default class, zh_CN and zh
+		assertEquals(3, files.size());
+		List<String> arguments = new ArrayList<String>();
+		arguments.add("-classpath");
+		arguments.add(System.getProperty("java.class.path"));
+		for (File file : files) {
+			arguments.add(file.getPath());
+		}
+		assertEquals(0, javac.run(null, null, null, arguments.toArray(new String[arguments.size()])));
+
+		this.provider = new CompiledBundleMessageSource();
+		this.provider.setBundleClassName("org.vsg.generated.Messages");
+		this.provider.setBundleClassLoader(new URLClassLoader(
+				new URL[] {this.outputDirectory.toURI().toURL()}, getClass().getClassLoader()));
+	}
+
+	@After
+	public void tearDown() {
+		if (this.outputDirectory != null) {
+			delete(this.outputDirectory);
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	@Test
+	public void testGetMessage() {
+		assertEquals("\u4E2D\u6587\u59D3", this.provider.getMessage("label.firstname", null, Locale.CHINA));
+		assertEquals("Last Name", this.provider.getMessage("label.lastname", null, Locale.CHINA));
+		assertEquals(this.source.getMessage("label.welcome", new Object[] {"Vison", 3}, Locale.CHINA),
+				this.provider.getMessage("label.welcome", new Object[] {"Vison", 3}, Locale.CHINA));
+		assertNotNull(this.provider.getMessage("label.firstname", null, Locale.FRANCE));
+	}
+
+	@Test
+	public void testGetMessage_FallbackToSystemLocale() {
+		ClasspathI18nMessageProvider fallbackSource = new ClasspathI18nMessageProvider();
+		fallbackSource.setBasenames(this.source.getBasenames());
+		Locale defaultLocale = Locale.getDefault();
+		try {
+			Locale.setDefault(Locale.CHINA);
+			assertEquals("\u4E2D\u6587\u59D3", this.provider.getMessage("label.firstname", null, Locale.FRANCE));
+			assertEquals(fallbackSource.getMessage("label.title", null, Locale.FRANCE),
+					this.provider.getMessage("label.title", null, Locale.FRANCE));
+
+			// rebuilt once the system Locale changes
+			Locale.setDefault(Locale.ENGLISH);
+			fallbackSource.clearCache();
+			assertEquals(fallbackSource.getMessage("label.firstname", null, Locale.FRANCE),
+					this.provider.getMessage("label.firstname", null, Locale.FRANCE));
+
+			this.provider.setFallbackToSystemLocale(false);
+			Locale.setDefault(Locale.CHINA);
+			assertEquals("First Name3", this.provider.getMessage("label.firstname", null, Locale.FRANCE));
+		}
+		finally {
+			Locale.setDefault(defaultLocale);
+		}
+	}
+
+	@Test
+	public void testGetMessage_Missing() {
+		assertEquals("fallback", this.provider.getMessage("label.missing", null, "fallback", Locale.CHINA));
+	}
+
+	@Test
+	public void testBundleClassName() {
+		assertEquals("Messages", CompiledBundleMessageSource.getBundleClassName("Messages", Locale.ROOT));
+		assertEquals("Messages_zh_CN", CompiledBundleMessageSource.getBundleClassName("Messages", Locale.CHINA));
+		assertEquals("Messages_de", CompiledBundleMessageSource.getBundleClassName("Messages", Locale.GERMAN));
+	}
+
+}
@@ -0,0 +1,186 @@
+package org.vsg.common.i18n;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class MessageFormatCacheTest {
+
+	private static MessageFormat format(String text) {
+		return new MessageFormat(text, Locale.ENGLISH);
+	}
+
+	@Test
+	public void testGetAndPut() {
+		MessageFormatCache cache = new MessageFormatCache(1000);
+		Object owner = new Object();
+		assertNull(cache.get(owner, "code", Locale.ENGLISH));
+		MessageFormat format = format("Hello {0}");
+		assertSame(format, cache.putIfAbsent(owner, "code", Locale.ENGLISH, format, 9));
+		assertSame(format, cache.putIfAbsent(owner, "code", Locale.ENGLISH, format("Other {0}"), 9));
+		assertSame(format, cache.get(owner, "code", Locale.ENGLISH));
+		assertNull(cache.get(owner, "code", Locale.CHINA));
+		assertNull(cache.get(new Object(), "code", Locale.ENGLISH));
+
+		CacheStats stats = cache.getStats();
+		assertEquals(1, stats.getHitCount());
+		assertEquals(3, stats.getMissCount());
+		assertEquals(1, stats.getSize());
+		assertEquals(9, stats.getWeightedSize());
+
+		cache.clear();
+		assertNull(cache.get(owner, "code", Locale.ENGLISH));
+		assertEquals(0, cache.getStats().getWeightedSize());
+	}
+
+	@Test
+	public void testBoundedByWeight() {
+		MessageFormatCache cache = new MessageFormatCache(100);
+		for (int i = 0; i < 1000; i++) {
+			cache.putIfAbsent(null, "code" + i, Locale.ENGLISH, format("m" + i), 7);
+			assertTrue(cache.getStats().getWeightedSize() <= 100);
+		}
+		CacheStats stats = cache.getStats();
+		assertTrue(stats.getEvictionCount() >= 1000 - 100 / 7);
+		assertEquals(stats.getSize() * 7, stats.getWeightedSize());
+	}
+
+	@Test
+	public void testHotEntriesSurviveScan() {
+		MessageFormatCache cache = new MessageFormatCache(100);
+		List<MessageFormat> hot = new ArrayList<MessageFormat>();
+		for (int i = 0; i < 10; i++) {
+			MessageFormat format = format("hot" + i);
+			cache.putIfAbsent(null, "hot" + i, Locale.ENGLISH, format, 1);
+			hot.add(format);
+		}
+		for (int round = 0; round < 20; round++) {
+			for (int i = 0; i < 10; i++) {
+				cache.get(null, "hot" + i, Locale.ENGLISH);
+			}
+		}
+		// one-off messages must not displace the frequently used ones
+		for (int i = 0; i < 1000; i++) {
+			cache.putIfAbsent(null, "cold" + i, Locale.ENGLISH, format("cold" + i), 1);
+		}
+		for (int i = 0; i < 10; i++) {
+			assertSame(hot.get(i), cache.get(null, "hot" + i, Locale.ENGLISH));
+		}
+		assertTrue(cache.getStats().getEvictionCount() > 0);
+	}
+
+	@Test
+	public void testHotEntriesSurviveScanWhileGrowing() {
+		// room for 4096 entries: the sketch grows several times while filling
+		MessageFormatCache cache = new MessageFormatCache(64 * 1024);
+		List<MessageFormat> hot = new ArrayList<MessageFormat>();
+		for (int i = 0; i < 100; i++) {
+			MessageFormat format = format("hot" + i);
+			cache.putIfAbsent(null, "hot" + i, Locale.ENGLISH, format, 16);
+			hot.add(format);
+		}
+		for (int batch = 0; batch < 100; batch++) {
+			for (int round = 0; round < 2; round++) {
+				for (int i = 0; i < 100; i++) {
+					cache.get(null, "hot" + i, Locale.ENGLISH);
+				}
+			}
+			for (int i = 0; i < 100; i++) {
+				cache.putIfAbsent(null, "cold" + batch + "_" + i, Locale.ENGLISH, format("cold" + i), 16);
+			}
+		}
+		for (int i = 0; i < 100; i++) {
+			assertSame(hot.get(i), cache.get(null, "hot" + i, Locale.ENGLISH));
+		}
+		assertTrue(cache.getStats().getEvictionCount() > 0);
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		final MessageFormatCache cache = new MessageFormatCache(500);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int t = 0; t < 8; t++) {
+				final int seed = t;
+				futures.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() {
+						for (int i = 0; i < 20000; i++) {
+							String code = "code" + ((i * (seed + 1)) % (i % 3 == 0 ? 50 : 2000));
+							MessageFormat format = cache.get(null, code, Locale.ENGLISH);
+							if (format == null) {
+								format = cache.putIfAbsent(null, code, Locale.ENGLISH, format(code), code.length());
+							}
+							assertNotNull(format);
+							assertEquals(code, format.toPattern());
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		CacheStats stats = cache.getStats();
+		assertTrue(stats.getWeightedSize() <= 500);
+		assertTrue(stats.getHitCount() > 0);
+	}
+
+	@Test
+	public void testWeightAccountingUnderContention() throws Exception {
+		final BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>(200);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int t = 0; t < 8; t++) {
+				final int seed = t;
+				futures.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() {
+						for (int i = 0; i < 50000; i++) {
+							// reads of entries just inserted by other threads race their linking
+							Integer key = (i * 31 + seed * 7) % 300;
+							if (cache.get(key) == null) {
+								cache.putIfAbsent(key, key, key % 7 + 1);
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		long liveWeight = 0;
+		for (int key = 0; key < 300; key++) {
+			if (cache.get(key) != null) {
+				liveWeight += key % 7 + 1;
+			}
+		}
+		CacheStats stats = cache.getStats();
+		assertEquals(liveWeight, stats.getWeightedSize());
+		assertTrue(stats.getWeightedSize() <= 200);
+	}
+}
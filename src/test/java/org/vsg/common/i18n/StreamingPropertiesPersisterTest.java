@@ -0,0 +1,97 @@
+package org.vsg.common.i18n;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class StreamingPropertiesPersisterTest {
+
+	private static final String[] CONTENTS = {
+		"",
+		"key=value",
+		"key = value \n other:value2\r\nthird value3\rfourth",
+		"# comment\n! comment\n\n   \n\tkey\t=\t value",
+		"key=line one \\\n    line two \\\r\n\tline three",
+		"key\\ with\\=escapes\\:=a\\tb\\nc\\\\d\\u4E2D",
+		"key==value",
+		"key:=value",
+		"key  :  value",
+		"only-key",
+		"only-key-with-space ",
+		"trailing=backslash\\",
+		"# comment with continuation \\\nkey=value",
+		"dup=one\ndup=two",
+		"\\#notcomment=value",
+		"key=\u4E2D\u6587\uD83D\uDE00 \u00E9",
+		"   ",
+		"key=value\\\\\nnext=value",
+	};
+
+	@Test
+	public void testMatchesProperties() throws Exception {
+		StreamingPropertiesPersister persister = new StreamingPropertiesPersister();
+		for (String charsetName : new String[] {"UTF-8", "ISO-8859-1", "UTF-16"}) {
+			Charset charset = Charset.forName(charsetName);
+			for (String content : CONTENTS) {
+				byte[] bytes = content.getBytes(charset);
+				Properties expected = new Properties();
+				expected.load(new InputStreamReader(new ByteArrayInputStream(bytes), charset));
+				Map<String, String> actual = parse(persister, ByteBuffer.wrap(bytes), charset);
+				assertEquals(charsetName + ": " + content, toMap(expected), actual);
+				actual = new HashMap<String, String>();
+				final Map<String, String> target = actual;
+				persister.load(Channels.newChannel(new ByteArrayInputStream(bytes)), charset,
+						new StreamingPropertiesPersister.PropertyHandler() {
+							@Override
+							public void handleProperty(String key, String value) {
+								target.put(key, value);
+							}
+						});
+				assertEquals(charsetName + ": " + content, toMap(expected), actual);
+			}
+		}
+	}
+
+	@Test
+	public void testMalformedUtf8() {
+		byte[] bytes = {'k', '=', 'a', (byte) 0xE4, (byte) 0xB8, 'b', (byte) 0xFF, 'c'};
+		Charset utf8 = Charset.forName("UTF-8");
+		assertEquals(new String(bytes, utf8), "k=" + parse(new StreamingPropertiesPersister(),
+				ByteBuffer.wrap(bytes), utf8).get("k"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMalformedUnicodeEscape() {
+		Charset utf8 = Charset.forName("UTF-8");
+		parse(new StreamingPropertiesPersister(), ByteBuffer.wrap("key=\\u12".getBytes(utf8)), utf8);
+	}
+
+	private static Map<String, String> parse(StreamingPropertiesPersister persister, ByteBuffer buffer, Charset charset) {
+		final Map<String, String> result = new HashMap<String, String>();
+		persister.load(buffer, charset, new StreamingPropertiesPersister.PropertyHandler() {
+			@Override
+			public void handleProperty(String key, String value) {
+				result.put(key, value);
+			}
+		});
+		return result;
+	}
+
+	private static Map<String, String> toMap(Properties props) {
+		Map<String, String> map = new HashMap<String, String>();
+		for (String key : props.stringPropertyNames()) {
+			map.put(key, props.getProperty(key));
+		}
+		return map;
+	}
+
+}